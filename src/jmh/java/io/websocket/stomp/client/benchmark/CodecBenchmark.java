@@ -0,0 +1,50 @@
+package io.websocket.stomp.client.benchmark;
+
+import io.websocket.stomp.client.codec.CborCodec;
+import io.websocket.stomp.client.codec.GsonCodec;
+import io.websocket.stomp.client.codec.MessageCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of encoding and decoding a payload, by codec and by size of the payload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({ "json", "cbor" })
+    public String codec;
+
+    /**
+     * The number of sizes of the quote: about 6, 600 and 40000 bytes of JSON.
+     */
+    @Param({ "0", "100", "5000" })
+    public int sizes;
+
+    private MessageCodec messageCodec;
+    private Payloads.Quote quote;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        messageCodec = "cbor".equals(codec) ? new CborCodec() : new GsonCodec();
+        quote = new Payloads.Quote(sizes);
+        encoded = messageCodec.encode(quote);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return messageCodec.encode(quote);
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return messageCodec.decode(encoded, Payloads.Quote.class);
+    }
+}
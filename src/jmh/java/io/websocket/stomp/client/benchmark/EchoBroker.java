@@ -0,0 +1,254 @@
+package io.websocket.stomp.client.benchmark;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-process STOMP broker, standing in for the server of the tests, so that the benchmarks
+ * need no external process. It listens on a random local port and serves:
+ * <ul>
+ *     <li>{@code /echo/message}: echoes the message to {@code /user/<uuid>/echo/message}, as the requests expect</li>
+ *     <li>{@code /fanin/<topic>}: publishes the message to {@code /topic/<topic>}</li>
+ *     <li>{@code /broker/discard}: has no route, so the message is dropped</li>
+ *     <li>{@code /broker/drop}: closes the websocket session of the sender, to force a reconnection</li>
+ * </ul>
+ * Every frame with a {@code receipt} header is acknowledged with a RECEIPT frame.
+ */
+public class EchoBroker implements AutoCloseable {
+    private final ConfigurableApplicationContext context;
+
+    private EchoBroker(ConfigurableApplicationContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Starts a broker on a random local port.
+     *
+     * @return the started broker
+     */
+    public static EchoBroker start() {
+        return new EchoBroker(new SpringApplicationBuilder(Configuration.class)
+                .web(WebApplicationType.SERVLET)
+                .properties("server.port=0", "spring.main.banner-mode=off", "logging.level.root=WARN")
+                .run());
+    }
+
+    /**
+     * Yields the websocket end-point of this broker.
+     *
+     * @return the url of the end-point
+     */
+    public String url() {
+        return "ws://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort() + "/";
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    private final static int MESSAGE_SIZE_LIMIT = 4 * 1024 * 1024;
+
+    /**
+     * The size of the buffers of each websocket session, that bounds the size of the batches of frames of the clients.
+     * It is allocated per session, hence kept small for the load tests with many clients.
+     */
+    private final static int BUFFER_SIZE = 256 * 1024;
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EnableWebSocketMessageBroker
+    static class Configuration implements WebSocketMessageBrokerConfigurer {
+
+        /**
+         * The open websocket sessions, by id. The id is also the STOMP session id of their messages.
+         */
+        private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+        @Autowired
+        @Lazy
+        @Qualifier("clientOutboundChannel")
+        private MessageChannel clientOutboundChannel;
+
+        @Bean
+        public Routes routes(SimpMessagingTemplate template) {
+            return new Routes(template, sessions);
+        }
+
+        /**
+         * The websocket container, whose buffers must hold the batches of frames of the clients (default 8192 bytes).
+         */
+        @Bean
+        public ServletServerContainerFactoryBean webSocketContainer() {
+            ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+            container.setMaxTextMessageBufferSize(BUFFER_SIZE);
+            container.setMaxBinaryMessageBufferSize(BUFFER_SIZE);
+            return container;
+        }
+
+        @Bean
+        public ThreadPoolTaskScheduler heartbeatScheduler() {
+            ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+            scheduler.setPoolSize(2);
+            scheduler.setThreadNamePrefix("broker-heartbeat-");
+            return scheduler;
+        }
+
+        @Override
+        public void registerStompEndpoints(StompEndpointRegistry registry) {
+            registry.addEndpoint("/").setAllowedOrigins("*").addInterceptors(new HandshakeInterceptor() {
+
+                @Override
+                public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler handler, Map<String, Object> attributes) {
+                    attributes.put("uuid", request.getHeaders().getFirst("uuid"));
+                    return true;
+                }
+
+                @Override
+                public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler handler, Exception exception) {}
+            });
+        }
+
+        @Override
+        public void configureMessageBroker(MessageBrokerRegistry registry) {
+            registry.enableSimpleBroker("/topic", "/user").setHeartbeatValue(new long[] { 5000, 5000 }).setTaskScheduler(heartbeatScheduler());
+            registry.setApplicationDestinationPrefixes("/echo", "/fanin", "/broker");
+            // the user destinations of the client are plain broker destinations
+            registry.setUserDestinationPrefix("/unused/");
+        }
+
+        @Override
+        public void configureClientInboundChannel(ChannelRegistration registration) {
+            registration.interceptors(new ChannelInterceptor() {
+
+                @Override
+                public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception exception) {
+                    StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+                    if (accessor.getCommand() == null || accessor.getReceipt() == null)
+                        return;
+
+                    StompHeaderAccessor receipt = StompHeaderAccessor.create(StompCommand.RECEIPT);
+                    receipt.setReceiptId(accessor.getReceipt());
+                    receipt.setSessionId(accessor.getSessionId());
+                    clientOutboundChannel.send(MessageBuilder.createMessage(new byte[0], receipt.getMessageHeaders()));
+                }
+            });
+        }
+
+        @Override
+        public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+            registration.setMessageSizeLimit(MESSAGE_SIZE_LIMIT)
+                    .setSendBufferSizeLimit(64 * 1024 * 1024)
+                    .addDecoratorFactory(handler -> new WebSocketHandlerDecorator(handler) {
+
+                        @Override
+                        public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                            sessions.put(session.getId(), session);
+                            super.afterConnectionEstablished(session);
+                        }
+
+                        @Override
+                        public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                            sessions.remove(session.getId());
+                            super.afterConnectionClosed(session, closeStatus);
+                        }
+                    });
+        }
+    }
+
+    @Controller
+    static class Routes {
+        private final SimpMessagingTemplate template;
+        private final Map<String, WebSocketSession> sessions;
+
+        Routes(SimpMessagingTemplate template, Map<String, WebSocketSession> sessions) {
+            this.template = template;
+            this.sessions = sessions;
+        }
+
+        @MessageMapping("/message")
+        public void echo(Message<byte[]> message) {
+            Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(message.getHeaders());
+            forward("/user/" + attributes.get("uuid") + "/echo/message", message);
+        }
+
+        @MessageMapping("/{topic}")
+        public void publish(@DestinationVariable String topic, Message<byte[]> message) {
+            String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+            if (destination != null && destination.startsWith("/fanin/"))
+                forward("/topic/" + topic, message);
+        }
+
+        @MessageMapping("/drop")
+        public void drop(Message<byte[]> message) throws IOException {
+            WebSocketSession session = sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+            if (session != null)
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        }
+
+        /**
+         * Sends a message to a destination, with the content type and the custom headers of the original message.
+         */
+        @SuppressWarnings("unchecked")
+        private void forward(String destination, Message<byte[]> message) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+            accessor.setContentType(contentType instanceof MimeType ? (MimeType) contentType
+                    : contentType != null ? MimeTypeUtils.parseMimeType(contentType.toString()) : MimeTypeUtils.APPLICATION_JSON);
+
+            Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) message.getHeaders().get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+            if (nativeHeaders != null)
+                nativeHeaders.forEach((name, values) -> {
+                    if (!name.equals("destination") && !name.equals("content-type") && !name.equals("content-length"))
+                        values.forEach(value -> accessor.addNativeHeader(name, value));
+                });
+
+            accessor.setLeaveMutable(true);
+            template.send(destination, MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders()));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.websocket.stomp.client.benchmark;
+
+import io.websocket.stomp.client.StompClient;
+import io.websocket.stomp.client.StompClientConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The rate at which a client receives the messages of many topics, subscribed with
+ * {@link StompClient#subscribeToTopicsAsync}. Each operation publishes one message per topic,
+ * from another client, and waits for all of them to be handled: the message rate is the operation rate
+ * multiplied by the number of topics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FanInBenchmark {
+
+    @Param({ "1", "16", "128" })
+    public int topics;
+
+    private EchoBroker broker;
+    private StompClient subscriber;
+    private StompClient publisher;
+    private List<String> destinations;
+    private Optional<Object> payload;
+    private final Semaphore received = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = EchoBroker.start();
+        subscriber = new StompClient(broker.url());
+        publisher = new StompClient(broker.url(), StompClientConfig.builder().batching(true).build());
+        payload = Optional.of(new Payloads.Quote(0));
+
+        List<String> subscribed = new ArrayList<>();
+        destinations = new ArrayList<>();
+        for (int i = 0; i < topics; i++) {
+            subscribed.add("/topic/fanin" + i);
+            destinations.add("/fanin/fanin" + i);
+        }
+
+        subscriber.subscribeToTopicsAsync(subscribed, Payloads.Quote.class, (quote, error) -> received.release()).get(10, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        publisher.close();
+        subscriber.close();
+        broker.close();
+    }
+
+    @Benchmark
+    public void publishToAll() throws InterruptedException, TimeoutException {
+        for (String destination : destinations)
+            publisher.send(destination, payload);
+
+        publisher.flush();
+        if (!received.tryAcquire(topics, 10, TimeUnit.SECONDS))
+            throw new TimeoutException("Messages lost: " + (topics - received.availablePermits()) + " of " + topics);
+    }
+}
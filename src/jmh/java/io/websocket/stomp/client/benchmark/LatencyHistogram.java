@@ -0,0 +1,124 @@
+package io.websocket.stomp.client.benchmark;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * A histogram of latencies, in microseconds, with a relative precision of 1/16: each power of two is split
+ * into 16 buckets. Recording is lock free, so that the clients under load do not contend on it.
+ */
+@ThreadSafe
+public class LatencyHistogram {
+    private final static int SUB_BUCKETS = 16;
+    private final static int SUB_BUCKET_BITS = 4;
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency, in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(indexOf(micros));
+        max.accumulate(micros);
+    }
+
+    /**
+     * Yields the latencies recorded so far and forgets them.
+     *
+     * @return the latencies recorded since the previous call
+     */
+    public Snapshot snapshotAndReset() {
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++)
+            snapshot[i] = counts.getAndSet(i, 0);
+
+        return new Snapshot(snapshot, max.getThenReset());
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The upper bound of the latencies of a bucket.
+     */
+    private static long valueOf(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * The latencies recorded by a histogram during a period.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        public final long count;
+        public final long maxMicros;
+
+        private Snapshot(long[] counts, long maxMicros) {
+            this.counts = counts;
+            this.maxMicros = maxMicros;
+
+            long count = 0;
+            for (long bucket : counts)
+                count += bucket;
+
+            this.count = count;
+        }
+
+        /**
+         * Merges this snapshot with another.
+         *
+         * @param other the other snapshot
+         * @return the snapshot with the latencies of both
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = counts.clone();
+            for (int i = 0; i < merged.length; i++)
+                merged[i] += other.counts[i];
+
+            return new Snapshot(merged, Math.max(maxMicros, other.maxMicros));
+        }
+
+        /**
+         * Yields a percentile of the latencies.
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return the latency, in microseconds, that {@code percentile} percent of the latencies do not exceed,
+         *         or 0 if there are no latencies
+         */
+        public long percentileMicros(double percentile) {
+            if (count == 0)
+                return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(valueOf(i), maxMicros);
+            }
+
+            return maxMicros;
+        }
+
+        static Snapshot empty() {
+            return new Snapshot(new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS], 0);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package io.websocket.stomp.client.benchmark;
+
+import io.websocket.stomp.client.ConnectionState;
+import io.websocket.stomp.client.StompClient;
+import io.websocket.stomp.client.StompClientConfig;
+import io.websocket.stomp.client.StompClientRuntime;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A load generator and soak test for many {@link StompClient} instances in the same JVM, as when
+ * a host serves a client per tenant. It connects N clients to a broker (by default an in-process
+ * {@link EchoBroker}), subscribes each of them to some shared topics, then drives a mix of publications
+ * and requests at a fixed rate per client. Periodically, and at the end, it reports the throughput,
+ * the latency percentiles of the requests and of the deliveries, the threads and the heap per client.
+ * <p>
+ * Options, all optional:
+ * <pre>
+ * --clients N          number of clients (100)
+ * --duration S         length of the run, in seconds (60)
+ * --report S           period of the reports, in seconds (10)
+ * --rate R             operations per second per client (10)
+ * --mix P:Q            relative weights of the publications and of the requests (50:50)
+ * --topics T           number of shared topics (16)
+ * --subscriptions K    topics subscribed by each client (1)
+ * --pipelining         pipelines the requests to the same topic
+ * --shared-runtime     creates the clients from a single {@link StompClientRuntime}
+ * --buffer B           size of the inbound message buffers of each client, in bytes (2097152)
+ * --gc                 collects the garbage before each report, so that the heap shows the live objects only
+ * --url URL            the broker, instead of the in-process one
+ * </pre>
+ * The threads and the heap per client include those of the in-process broker, if any.
+ * Run it with {@code mvn -Pbenchmarks compile exec:exec@soak -Dsoak.args="--clients 1000 --duration 3600 --gc"}.
+ */
+public class LoadGenerator {
+    private final Map<String, String> options;
+    private final int clients;
+    private final long durationSeconds;
+    private final long reportSeconds;
+    private final double rate;
+    private final int publishWeight;
+    private final int requestWeight;
+    private final int topics;
+    private final int subscriptions;
+    private final boolean pipelining;
+    private final boolean sharedRuntime;
+    private final int bufferBytes;
+    private final boolean gc;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder requested = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder[] counters = { published, delivered, requested, failed };
+
+    /**
+     * The values of the counters at the previous report.
+     */
+    private final long[] lastCounts = new long[counters.length];
+
+    private final LatencyHistogram requestLatencies = new LatencyHistogram();
+    private final LatencyHistogram deliveryLatencies = new LatencyHistogram();
+    private LatencyHistogram.Snapshot totalRequestLatencies = LatencyHistogram.Snapshot.empty();
+    private LatencyHistogram.Snapshot totalDeliveryLatencies = LatencyHistogram.Snapshot.empty();
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.clients = Integer.parseInt(options.getOrDefault("clients", "100"));
+        this.durationSeconds = Long.parseLong(options.getOrDefault("duration", "60"));
+        this.reportSeconds = Long.parseLong(options.getOrDefault("report", "10"));
+        this.rate = Double.parseDouble(options.getOrDefault("rate", "10"));
+        this.topics = Integer.parseInt(options.getOrDefault("topics", "16"));
+        this.subscriptions = Integer.parseInt(options.getOrDefault("subscriptions", "1"));
+        this.pipelining = options.containsKey("pipelining");
+        this.sharedRuntime = options.containsKey("shared-runtime");
+        this.bufferBytes = Integer.parseInt(options.getOrDefault("buffer", "2097152"));
+        this.gc = options.containsKey("gc");
+
+        String[] mix = options.getOrDefault("mix", "50:50").split(":");
+        if (mix.length != 2)
+            throw new IllegalArgumentException("mix must be publications:requests, such as 80:20");
+
+        this.publishWeight = Integer.parseInt(mix[0]);
+        this.requestWeight = Integer.parseInt(mix[1]);
+
+        if (clients < 1 || durationSeconds < 1 || reportSeconds < 1 || rate <= 0 || topics < 1 || bufferBytes < 1)
+            throw new IllegalArgumentException("clients, duration, report, rate, topics and buffer must be positive");
+        if (subscriptions < 0 || subscriptions > topics)
+            throw new IllegalArgumentException("subscriptions must be between 0 and the number of topics");
+        if (publishWeight < 0 || requestWeight < 0 || publishWeight + requestWeight == 0)
+            throw new IllegalArgumentException("mix weights must be non-negative, and not both zero");
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(parse(args)).run();
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+
+            String name = args[i].substring(2);
+            if (name.equals("pipelining") || name.equals("shared-runtime") || name.equals("gc"))
+                options.put(name, "true");
+            else if (i + 1 < args.length)
+                options.put(name, args[++i]);
+            else
+                throw new IllegalArgumentException("Missing value of option " + args[i]);
+        }
+
+        return options;
+    }
+
+    private void run() throws Exception {
+        EchoBroker broker = options.containsKey("url") ? null : EchoBroker.start();
+        String url = broker != null ? broker.url() : options.get("url");
+
+        int baselineThreads = threads.getThreadCount();
+        long baselineHeap = usedHeap(true);
+        System.out.printf("Load of %d clients on %s for %d s: %.1f operations/s per client, mix %d:%d, %d topics, %d subscriptions per client%s%n",
+                clients, url, durationSeconds, rate, publishWeight, requestWeight, topics, subscriptions, sharedRuntime ? ", shared runtime" : "");
+
+        StompClientConfig config = StompClientConfig.builder().pipelining(pipelining).messageBufferBytes(bufferBytes).build();
+        StompClientRuntime runtime = sharedRuntime ? new StompClientRuntime() : null;
+        List<StompClient> stompClients = new ArrayList<>(clients);
+        ScheduledExecutorService driver = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < clients; i++)
+                stompClients.add(connect(runtime, url, config, i));
+
+            long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.printf("Connected in %d ms (%.2f ms per client): %.1f threads and %.1f KiB of heap per client%n",
+                    connectMillis, (double) connectMillis / clients,
+                    (double) (threads.getThreadCount() - baselineThreads) / clients,
+                    (usedHeap(true) - baselineHeap) / 1024.0 / clients);
+
+            long periodMicros = (long) (1_000_000 / rate);
+            for (StompClient client : stompClients)
+                driver.scheduleAtFixedRate(() -> operate(client), ThreadLocalRandom.current().nextLong(periodMicros), periodMicros, TimeUnit.MICROSECONDS);
+
+            System.out.println("  time  clients  publish/s  deliver/s  request/s  errors  request p50/p99/p99.9/max (us)  delivery p50/p99/max (us)  threads  heap/client (KiB)");
+            long lastReport = System.nanoTime();
+            long end = lastReport + TimeUnit.SECONDS.toNanos(durationSeconds);
+            while (System.nanoTime() < end) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(TimeUnit.SECONDS.toNanos(reportSeconds), end - System.nanoTime()));
+
+                long now = System.nanoTime();
+                report(stompClients, TimeUnit.NANOSECONDS.toSeconds(now - end) + durationSeconds, now - lastReport, baselineHeap);
+                lastReport = now;
+            }
+        }
+        finally {
+            driver.shutdownNow();
+            driver.awaitTermination(10, TimeUnit.SECONDS);
+            stompClients.forEach(StompClient::close);
+            if (runtime != null)
+                runtime.close();
+
+            if (broker != null)
+                broker.close();
+        }
+
+        System.out.printf("Total: %d publications, %d deliveries, %d requests, %d errors%n", published.sum(), delivered.sum(), requested.sum(), failed.sum());
+        System.out.printf("Requests:   p50 %d us, p99 %d us, p99.9 %d us, max %d us%n",
+                totalRequestLatencies.percentileMicros(50), totalRequestLatencies.percentileMicros(99), totalRequestLatencies.percentileMicros(99.9), totalRequestLatencies.maxMicros);
+        System.out.printf("Deliveries: p50 %d us, p99 %d us, p99.9 %d us, max %d us%n",
+                totalDeliveryLatencies.percentileMicros(50), totalDeliveryLatencies.percentileMicros(99), totalDeliveryLatencies.percentileMicros(99.9), totalDeliveryLatencies.maxMicros);
+
+        // the threads of the clients should be gone once they are closed
+        TimeUnit.SECONDS.sleep(1);
+        System.out.printf("Threads after close: %d, %d more than before the clients%n", threads.getThreadCount(), threads.getThreadCount() - baselineThreads);
+    }
+
+    private StompClient connect(StompClientRuntime runtime, String url, StompClientConfig config, int index) throws Exception {
+        StompClient client = runtime != null ? runtime.newClient(url, config) : new StompClient(url, config);
+
+        List<String> subscribed = new ArrayList<>();
+        for (int i = 0; i < subscriptions; i++)
+            subscribed.add("/topic/load" + (index + i) % topics);
+
+        client.subscribeToTopicsAsync(subscribed, Payloads.Stamp.class, (stamp, error) -> {
+            if (error != null)
+                failed.increment();
+            else {
+                delivered.increment();
+                deliveryLatencies.record(System.nanoTime() - stamp.sentNanos);
+            }
+        }).get(30, TimeUnit.SECONDS);
+
+        return client;
+    }
+
+    private void operate(StompClient client) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        try {
+            if (random.nextInt(publishWeight + requestWeight) < publishWeight) {
+                client.send("/fanin/load" + random.nextInt(topics), Optional.of(new Payloads.Stamp(System.nanoTime())));
+                published.increment();
+            }
+            else {
+                long sentNanos = System.nanoTime();
+                CompletableFuture<Payloads.Stamp> reply = client.subscribeAndSendAsync("/echo/message", Payloads.Stamp.class, Optional.of(new Payloads.Stamp(sentNanos)), 10, TimeUnit.SECONDS);
+                reply.whenComplete((stamp, throwable) -> {
+                    if (throwable != null)
+                        failed.increment();
+                    else {
+                        requested.increment();
+                        requestLatencies.record(System.nanoTime() - sentNanos);
+                    }
+                });
+            }
+        }
+        catch (RuntimeException e) {
+            failed.increment();
+        }
+    }
+
+    private void report(List<StompClient> stompClients, long elapsedSeconds, long periodNanos, long baselineHeap) {
+        double seconds = periodNanos / 1e9;
+        double[] rates = new double[counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            long count = counters[i].sum();
+            rates[i] = (count - lastCounts[i]) / seconds;
+            lastCounts[i] = count;
+        }
+
+        LatencyHistogram.Snapshot requests = requestLatencies.snapshotAndReset();
+        LatencyHistogram.Snapshot deliveries = deliveryLatencies.snapshotAndReset();
+        totalRequestLatencies = totalRequestLatencies.merge(requests);
+        totalDeliveryLatencies = totalDeliveryLatencies.merge(deliveries);
+
+        long connected = stompClients.stream().filter(client -> client.getConnectionState() == ConnectionState.CONNECTED).count();
+        System.out.printf("%6d  %7d  %9.0f  %9.0f  %9.0f  %6.0f  %8d/%d/%d/%d  %14d/%d/%d  %7d  %9.1f%n",
+                elapsedSeconds, connected, rates[0], rates[1], rates[2], rates[3] * seconds,
+                requests.percentileMicros(50), requests.percentileMicros(99), requests.percentileMicros(99.9), requests.maxMicros,
+                deliveries.percentileMicros(50), deliveries.percentileMicros(99), deliveries.maxMicros,
+                threads.getThreadCount(), (usedHeap(gc) - baselineHeap) / 1024.0 / stompClients.size());
+    }
+
+    private long usedHeap(boolean collect) {
+        if (collect)
+            System.gc();
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
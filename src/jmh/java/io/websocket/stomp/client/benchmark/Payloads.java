@@ -0,0 +1,54 @@
+package io.websocket.stomp.client.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The payloads exchanged by the benchmarks.
+ */
+public class Payloads {
+
+    private Payloads() {}
+
+    /**
+     * A quote, whose size grows with the number of its sizes.
+     */
+    public static class Quote {
+        public String symbol;
+        public double price;
+        public long volume;
+        public List<Integer> sizes;
+        public String venue;
+
+        public Quote() {}
+
+        /**
+         * Creates a quote.
+         *
+         * @param sizes the number of sizes of the quote
+         */
+        public Quote(int sizes) {
+            this.symbol = "ACME";
+            this.price = 12.75;
+            this.volume = 3_000_000_000L;
+            this.sizes = new ArrayList<>(sizes);
+            this.venue = "XNAS";
+
+            for (int i = 0; i < sizes; i++)
+                this.sizes.add(i * 97);
+        }
+    }
+
+    /**
+     * A message stamped with the time it was sent, to measure its latency within the same JVM.
+     */
+    public static class Stamp {
+        public long sentNanos;
+
+        public Stamp() {}
+
+        public Stamp(long sentNanos) {
+            this.sentNanos = sentNanos;
+        }
+    }
+}
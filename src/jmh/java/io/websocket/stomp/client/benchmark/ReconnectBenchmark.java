@@ -0,0 +1,62 @@
+package io.websocket.stomp.client.benchmark;
+
+import io.websocket.stomp.client.ConnectionState;
+import io.websocket.stomp.client.StompClient;
+import io.websocket.stomp.client.StompClientConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time for a client to get connected again after the broker closed its session: the detection of
+ * the loss, the new connection and the renewal of its subscriptions. The reconnection delay is kept
+ * at its minimum, without jitter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 50)
+@Fork(1)
+public class ReconnectBenchmark {
+
+    @Param({ "1", "100" })
+    public int subscriptions;
+
+    private EchoBroker broker;
+    private StompClient client;
+    private volatile CompletableFuture<Void> reconnected;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = EchoBroker.start();
+        client = new StompClient(broker.url(), StompClientConfig.builder().reconnectDelays(1, 1000).reconnectJitter(0).build());
+
+        for (int i = 0; i < subscriptions; i++)
+            client.subscribeToTopicAsync("/topic/reconnect" + i, Payloads.Quote.class, (quote, error) -> {}).get(10, TimeUnit.SECONDS);
+
+        client.addConnectionListener(event -> {
+            if (event.state == ConnectionState.CONNECTED)
+                reconnected.complete(null);
+        });
+    }
+
+    @Setup(Level.Invocation)
+    public void arm() {
+        reconnected = new CompletableFuture<>();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        broker.close();
+    }
+
+    @Benchmark
+    public void reconnect() throws Exception {
+        client.send("/broker/drop", Optional.empty());
+        reconnected.get(10, TimeUnit.SECONDS);
+    }
+}
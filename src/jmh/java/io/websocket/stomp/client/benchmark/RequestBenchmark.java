@@ -0,0 +1,59 @@
+package io.websocket.stomp.client.benchmark;
+
+import io.websocket.stomp.client.StompClient;
+import io.websocket.stomp.client.StompClientConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of the echo requests made by {@link StompClient#subscribeAndSend(String, Class, Optional)},
+ * by number of concurrent callers, with the requests to the same topic serialized or pipelined.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean pipelining;
+
+    private EchoBroker broker;
+    private StompClient client;
+    private Optional<Object> payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = EchoBroker.start();
+        client = new StompClient(broker.url(), StompClientConfig.builder().pipelining(pipelining).maxInFlightPerTopic(64).build());
+        payload = Optional.of(new Payloads.Quote(0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        broker.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Payloads.Quote request() throws InterruptedException {
+        return client.subscribeAndSend("/echo/message", Payloads.Quote.class, payload);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Payloads.Quote request8Threads() throws InterruptedException {
+        return client.subscribeAndSend("/echo/message", Payloads.Quote.class, payload);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Payloads.Quote request32Threads() throws InterruptedException {
+        return client.subscribeAndSend("/echo/message", Payloads.Quote.class, payload);
+    }
+}
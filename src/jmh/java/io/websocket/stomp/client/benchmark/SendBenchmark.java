@@ -0,0 +1,66 @@
+package io.websocket.stomp.client.benchmark;
+
+import io.websocket.stomp.client.StompClient;
+import io.websocket.stomp.client.StompClientConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput of {@link StompClient#send(String, Optional)}, with and without the batching of the frames.
+ * The messages go to a destination without route, so that only the client and the transport are measured.
+ * Since sending only queues the frames, each invocation sends a burst of messages followed by an echo request,
+ * whose response proves that the whole burst reached the broker: otherwise the queue would grow without bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendBenchmark {
+    private final static int BURST = 100;
+
+    @Param({ "false", "true" })
+    public boolean batching;
+
+    private EchoBroker broker;
+    private StompClient client;
+    private Optional<Object> payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = EchoBroker.start();
+        client = new StompClient(broker.url(), StompClientConfig.builder().batching(batching).build());
+        payload = Optional.of(new Payloads.Quote(0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        broker.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(BURST)
+    public Payloads.Quote send() throws InterruptedException {
+        return sendBurst();
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BURST)
+    public Payloads.Quote send4Threads() throws InterruptedException {
+        return sendBurst();
+    }
+
+    private Payloads.Quote sendBurst() throws InterruptedException {
+        for (int i = 0; i < BURST; i++)
+            client.send("/broker/discard", payload);
+
+        client.flush();
+        return client.subscribeAndSend("/echo/message", Payloads.Quote.class, payload);
+    }
+}
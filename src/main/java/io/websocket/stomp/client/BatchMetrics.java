@@ -0,0 +1,51 @@
+package io.websocket.stomp.client;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * A snapshot of the batches of outbound frames written by a {@link StompClient} so far.
+ * Without batching, each frame is written as a batch of its own.
+ */
+@Immutable
+public class BatchMetrics {
+
+    /**
+     * The number of websocket messages written.
+     */
+    public final long batches;
+
+    /**
+     * The number of STOMP frames written, within all batches.
+     */
+    public final long frames;
+
+    /**
+     * The number of bytes written, within all batches.
+     */
+    public final long bytes;
+
+    /**
+     * The largest number of frames written in one batch.
+     */
+    public final long maxFramesPerBatch;
+
+    public BatchMetrics(long batches, long frames, long bytes, long maxFramesPerBatch) {
+        this.batches = batches;
+        this.frames = frames;
+        this.bytes = bytes;
+        this.maxFramesPerBatch = maxFramesPerBatch;
+    }
+
+    /**
+     * Yields the average number of frames per batch.
+     * @return the average, or 0 if no batch was written
+     */
+    public double averageFramesPerBatch() {
+        return batches == 0 ? 0 : (double) frames / batches;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchMetrics{batches=" + batches + ", frames=" + frames + ", bytes=" + bytes + ", maxFramesPerBatch=" + maxFramesPerBatch + "}";
+    }
+}
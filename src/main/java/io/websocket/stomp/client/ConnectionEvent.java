@@ -0,0 +1,43 @@
+package io.websocket.stomp.client;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * A change of the state of the connection of a {@link StompClient}, or a failed attempt to reconnect.
+ */
+@Immutable
+public class ConnectionEvent {
+
+    /**
+     * The state of the connection.
+     */
+    public final ConnectionState state;
+
+    /**
+     * The number of attempts to reconnect made so far since the connection was lost, 0 if none.
+     */
+    public final int attempt;
+
+    /**
+     * The cause of the loss of the connection or of the failure of the last attempt, if any.
+     */
+    public final Throwable cause;
+
+    /**
+     * For a reconnection, the time elapsed since the connection was lost, in milliseconds; 0 otherwise.
+     */
+    public final long outageMillis;
+
+    public ConnectionEvent(ConnectionState state, int attempt, Throwable cause, long outageMillis) {
+        this.state = state;
+        this.attempt = attempt;
+        this.cause = cause;
+        this.outageMillis = outageMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionEvent{state=" + state + ", attempt=" + attempt + ", outageMillis=" + outageMillis
+                + (cause != null ? ", cause=" + cause : "") + "}";
+    }
+}
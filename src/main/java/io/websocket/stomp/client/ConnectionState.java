@@ -0,0 +1,28 @@
+package io.websocket.stomp.client;
+
+/**
+ * The state of the connection of a {@link StompClient} to its end-point.
+ */
+public enum ConnectionState {
+
+    /**
+     * The client is connecting for the first time.
+     */
+    CONNECTING,
+
+    /**
+     * The client is connected and its subscriptions are active, or being restored.
+     */
+    CONNECTED,
+
+    /**
+     * The connection was lost and the client is trying to reconnect, with exponential backoff.
+     * The requests sent in the meantime fail, while the new subscriptions wait for the reconnection.
+     */
+    RECONNECTING,
+
+    /**
+     * The client was closed, or it gave up reconnecting.
+     */
+    CLOSED
+}
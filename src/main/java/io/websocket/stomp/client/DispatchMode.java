@@ -0,0 +1,26 @@
+package io.websocket.stomp.client;
+
+/**
+ * How the messages of the topics are handed to their handlers.
+ */
+public enum DispatchMode {
+
+    /**
+     * The handlers run on the transport thread, as soon as a message arrives. This yields the minimal latency,
+     * but a slow handler delays the reception of all the messages of the session.
+     */
+    INLINE,
+
+    /**
+     * The handlers run on the dispatch executor. The messages of the same topic are handled one at a time,
+     * in order of arrival.
+     */
+    ORDERED,
+
+    /**
+     * The handlers of each topic run on virtual threads, one message at a time, in order of arrival. A handler that
+     * blocks holds up only its own topic, and no platform thread. Virtual threads need Java 21 or later:
+     * on older JVMs, this mode falls back to {@link #ORDERED}.
+     */
+    VIRTUAL_THREADS
+}
@@ -0,0 +1,28 @@
+package io.websocket.stomp.client;
+
+/**
+ * What the dispatcher does with a message whose topic has a full dispatch queue.
+ */
+public enum DispatchRejectionPolicy {
+
+    /**
+     * Blocks the transport thread until the queue has room for the message. The transport then reads no reply
+     * until the queue has room: if the handler holding up the queue waits for the reply of a request through
+     * {@code subscribeAndSend} or another blocking method of the client, the wait is detected, and the message
+     * is discarded after a second without progress, with an error, rather than waiting forever. A handler
+     * waiting for the transport otherwise, such as on a future of the client, must not let its queue fill up.
+     */
+    BLOCK,
+
+    /**
+     * Handles the messages still in the queue on the transport thread, in order, until the queue has room for
+     * the message. While the queue is drained by the dispatch executor, the transport thread waits for room,
+     * as with {@link #BLOCK}.
+     */
+    CALLER_RUNS,
+
+    /**
+     * Discards the message. The discarded messages are counted by the metrics registry.
+     */
+    DISCARD
+}
@@ -0,0 +1,92 @@
+package io.websocket.stomp.client;
+
+import java.util.function.LongSupplier;
+
+/**
+ * The receiver of the measurements of a {@link StompClient}, to be bridged to a metrics library such as Micrometer.
+ * The methods are called on the hot path, from many threads at the same time, so they must be thread safe, fast
+ * and non-blocking. They do nothing by default, and {@link #NOOP} ignores all measurements:
+ * with it, the client skips the measurements that would allocate.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * The registry that ignores all measurements.
+     */
+    MetricsRegistry NOOP = new MetricsRegistry() {};
+
+    /**
+     * Registers a gauge, sampled by the registry whenever it needs its value. It is called once per gauge,
+     * when the client is created. The gauges are {@code stomp.dispatch.queue.depth},
+     * {@code stomp.offline.buffered.bytes}, {@code stomp.latency.micros}, {@code stomp.lastvalue.cache.size},
+     * {@code stomp.response.cache.size} and {@code stomp.response.cache.bytes}.
+     *
+     * @param name the name of the gauge
+     * @param value the supplier of the value of the gauge
+     */
+    default void gauge(String name, LongSupplier value) {}
+
+    /**
+     * Records a message sent.
+     *
+     * @param destination the destination of the message
+     * @param bytes the size of the encoded payload
+     * @param encodeNanos the time spent encoding the payload, in nanoseconds
+     */
+    default void messageSent(String destination, int bytes, long encodeNanos) {}
+
+    /**
+     * Records a message received.
+     *
+     * @param destination the destination of the message
+     * @param bytes the size of the encoded payload
+     * @param decodeNanos the time spent decoding the payload, in nanoseconds
+     */
+    default void messageReceived(String destination, int bytes, long decodeNanos) {}
+
+    /**
+     * Records a message of a topic discarded by the dispatcher, since the dispatch queue of the topic was full.
+     *
+     * @param topic the topic of the message
+     */
+    default void messageDiscarded(String topic) {}
+
+    /**
+     * Records the completion of a request of {@code subscribeAndSend}.
+     *
+     * @param topic the topic of the request
+     * @param nanos the time from the request to its completion, in nanoseconds
+     * @param success true if the request got its reply, false if it failed, timed out or got cancelled
+     */
+    default void requestCompleted(String topic, long nanos, boolean success) {}
+
+    /**
+     * Records a lookup of the response cache by a request of {@code subscribeAndSend} to a topic whose
+     * responses are cached. A request sharing an identical request in flight is a hit.
+     *
+     * @param topic the topic of the request
+     * @param hit true if the request was answered without a request of its own
+     */
+    default void responseCacheLookup(String topic, boolean hit) {}
+
+    /**
+     * Records a subscription acknowledged by the server.
+     *
+     * @param topic the topic
+     * @param nanos the time from the request of the subscription to its acknowledgement, in nanoseconds
+     */
+    default void subscribed(String topic, long nanos) {}
+
+    /**
+     * Records the loss of the connection.
+     */
+    default void connectionLost() {}
+
+    /**
+     * Records a reconnection.
+     *
+     * @param attempts the number of attempts it took
+     * @param outageNanos the time since the loss of the connection, in nanoseconds
+     */
+    default void reconnected(int attempts, long outageNanos) {}
+}
@@ -0,0 +1,49 @@
+package io.websocket.stomp.client;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * A snapshot of the offline buffer of a {@link StompClient}.
+ */
+@Immutable
+public class OfflineBufferMetrics {
+
+    /**
+     * The number of messages currently buffered, in memory or in the spill file.
+     */
+    public final long bufferedMessages;
+
+    /**
+     * The number of bytes currently buffered in memory.
+     */
+    public final long bufferedBytes;
+
+    /**
+     * The number of bytes currently buffered in the spill file.
+     */
+    public final long spilledBytes;
+
+    /**
+     * The number of messages discarded so far because the buffer was full.
+     */
+    public final long droppedMessages;
+
+    /**
+     * The number of buffered messages sent so far, after a reconnection.
+     */
+    public final long replayedMessages;
+
+    public OfflineBufferMetrics(long bufferedMessages, long bufferedBytes, long spilledBytes, long droppedMessages, long replayedMessages) {
+        this.bufferedMessages = bufferedMessages;
+        this.bufferedBytes = bufferedBytes;
+        this.spilledBytes = spilledBytes;
+        this.droppedMessages = droppedMessages;
+        this.replayedMessages = replayedMessages;
+    }
+
+    @Override
+    public String toString() {
+        return "OfflineBufferMetrics{bufferedMessages=" + bufferedMessages + ", bufferedBytes=" + bufferedBytes + ", spilledBytes=" + spilledBytes
+                + ", droppedMessages=" + droppedMessages + ", replayedMessages=" + replayedMessages + "}";
+    }
+}
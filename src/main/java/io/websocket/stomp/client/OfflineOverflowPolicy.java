@@ -0,0 +1,23 @@
+package io.websocket.stomp.client;
+
+/**
+ * What a {@link StompClient} does with a message sent while disconnected, when its offline buffer is full.
+ */
+public enum OfflineOverflowPolicy {
+
+    /**
+     * Discards the oldest buffered messages to make room for the new one. With a spill file, the oldest
+     * messages of the file are discarded, once the memory is full.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discards the new message.
+     */
+    DROP_LATEST,
+
+    /**
+     * Throws a {@link io.websocket.stomp.client.exceptions.ConnectionLostException} to the sender.
+     */
+    FAIL
+}
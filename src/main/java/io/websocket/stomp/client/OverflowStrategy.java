@@ -0,0 +1,29 @@
+package io.websocket.stomp.client;
+
+/**
+ * What a topic publisher does with a new message when the buffer of a subscriber is full,
+ * because the subscriber did not request more messages yet.
+ */
+public enum OverflowStrategy {
+
+    /**
+     * Discards the oldest buffered message to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discards the new message.
+     */
+    DROP_LATEST,
+
+    /**
+     * Cancels the subscription and signals an error to the subscriber.
+     */
+    FAIL,
+
+    /**
+     * Blocks the transport thread until the subscriber requests more messages. This slows down the
+     * reception of all the messages of the session, not only those of the topic.
+     */
+    BLOCK
+}
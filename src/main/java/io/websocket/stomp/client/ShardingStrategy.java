@@ -0,0 +1,19 @@
+package io.websocket.stomp.client;
+
+/**
+ * How a {@link StompClientPool} chooses the session of the messages it sends.
+ */
+public enum ShardingStrategy {
+
+    /**
+     * The sessions are used in turn. This spreads the load evenly, but the messages sent to the same
+     * destination can overtake each other, since they travel over different connections.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * The session is chosen by the hash of the destination, so that the messages sent to the same
+     * destination keep their order.
+     */
+    DESTINATION_HASH
+}
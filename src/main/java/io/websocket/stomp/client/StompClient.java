@@ -1,14 +1,38 @@
 package io.websocket.stomp.client;
 
 
+import io.websocket.stomp.client.exceptions.ConnectionLostException;
 import io.websocket.stomp.client.exceptions.InternalFailureException;
 import io.websocket.stomp.client.exceptions.NetworkExceptionResponse;
+import io.websocket.stomp.client.internal.Backoff;
+import io.websocket.stomp.client.internal.Batching;
+import io.websocket.stomp.client.internal.ChunkedFrameHandler;
+import io.websocket.stomp.client.internal.Compression;
+import io.websocket.stomp.client.internal.CorrelatingFrameHandler;
+import io.websocket.stomp.client.internal.DestinationRouter;
+import io.websocket.stomp.client.internal.DestinationTrie;
+import io.websocket.stomp.client.internal.Dispatcher;
+import io.websocket.stomp.client.internal.EncodedPayload;
 import io.websocket.stomp.client.internal.FrameHandler;
+import io.websocket.stomp.client.internal.InFlightLimiter;
+import io.websocket.stomp.client.internal.LastValueCache;
+import io.websocket.stomp.client.internal.MessageTracer;
+import io.websocket.stomp.client.internal.OfflineBuffer;
+import io.websocket.stomp.client.internal.PendingRequests;
+import io.websocket.stomp.client.internal.ResponseCache;
+import io.websocket.stomp.client.internal.PendingRequests.PendingRequest;
+import io.websocket.stomp.client.internal.ReplyFuture;
+import io.websocket.stomp.client.internal.SerialRequests;
+import io.websocket.stomp.client.internal.SingleWriterWebSocketClient;
+import io.websocket.stomp.client.internal.SingleWriterWebSocketSession;
+import io.websocket.stomp.client.internal.TopicListeners;
+import io.websocket.stomp.client.internal.TopicPublisher;
+import io.websocket.stomp.client.internal.TopicSubscription;
 import io.websocket.stomp.client.internal.StompClientSessionHandler;
-import io.websocket.stomp.client.internal.GsonMessageConverter;
+import io.websocket.stomp.client.internal.CodecMessageConverter;
 import io.websocket.stomp.client.models.ErrorModel;
 import net.jcip.annotations.ThreadSafe;
-import org.apache.tomcat.websocket.WsWebSocketContainer;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.messaging.simp.stomp.StompFrameHandler;
@@ -20,13 +44,24 @@ import org.springframework.web.socket.WebSocketHttpHeaders;
 import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 import org.springframework.web.socket.messaging.WebSocketStompClient;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 
 /**
@@ -36,13 +71,66 @@ import java.util.function.BiConsumer;
 public class StompClient implements AutoCloseable {
     private final static Logger LOGGER = LoggerFactory.getLogger(StompClient.class);
 
-    private final static int MESSAGE_SIZE_LIMIT = 4 * 512 * 1024;
-
 	/**
 	 * The supporting STOMP client.
 	 */
 	private final WebSocketStompClient stompClient;
 
+    /**
+     * The websocket client that writes the outbound frames of the sessions.
+     */
+    private final SingleWriterWebSocketClient webSocketClient;
+
+    /**
+     * How the outbound frames are coalesced, with the counters of the batches written.
+     */
+    private final Batching batching;
+
+    /**
+     * The tracer of a sample of the messages.
+     */
+    private final MessageTracer tracer;
+
+    /**
+     * The converter of the payloads, through their codecs.
+     */
+    private final CodecMessageConverter messageConverter;
+
+    /**
+     * The buffer of the messages sent while disconnected, or {@code null} if they are not buffered.
+     */
+    private final OfflineBuffer offlineBuffer;
+
+    /**
+     * The last values received from the subscribed destinations, or {@code null} if they are not cached.
+     */
+    private final LastValueCache lastValues;
+
+    /**
+     * The responses of the idempotent requests, or {@code null} if no topic has its responses cached.
+     */
+    private final ResponseCache responses;
+
+    /**
+     * The transport resources of this client, possibly shared with other clients.
+     */
+    private final StompClientRuntime runtime;
+
+    /**
+     * True if the runtime belongs to this client only, and must be closed with it.
+     */
+    private final boolean ownRuntime;
+
+    /**
+     * The scheduler of the tasks of this client, such as the timeouts of the requests.
+     */
+    private final ThreadPoolTaskScheduler taskScheduler;
+
+    /**
+     * The dispatcher of the messages of the subscribed topics to their handlers.
+     */
+    private final Dispatcher dispatcher;
+
     /**
      * The unique identifier of this client. This allows more clients to connect to the same server.
      */
@@ -54,50 +142,190 @@ public class StompClient implements AutoCloseable {
     private final String url;
 
     /**
-     * The current session.
+     * The configuration of this client.
      */
-    private StompSession stompSession;
+    private final StompClientConfig config;
 
     /**
-     * The lock that guards all accessed to {@code stompSession}.
+     * The current connection, replaced on reconnection, or {@code null} while not connected. The messages
+     * of its session are written to the socket by a single writer, so that it can be used by many threads without locking.
      */
-    private final Object stompSessionLock = new Object();
+    private volatile Connection connection;
 
     /**
-     * The websockets subscriptions open so far with this client, per topic.
+     * The number of sessions created so far.
      */
-    private final ConcurrentHashMap<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong sessionGenerations = new AtomicLong();
 
     /**
-     * The websockets queues where the results are published and consumed, per topic.
+     * The state of the connection.
      */
-    private final ConcurrentHashMap<String, BlockingQueue<Object>> queues = new ConcurrentHashMap<>();
+    private final AtomicReference<ConnectionState> state = new AtomicReference<>(ConnectionState.CONNECTING);
 
     /**
-     * Creates an instance of a websockets client to subscribe, send and receive messages from a websockets end-point.
+     * The listeners of the changes of the state of the connection.
+     */
+    private final CopyOnWriteArrayList<Consumer<ConnectionEvent>> connectionListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The delays between the attempts to reconnect.
+     */
+    private final Backoff reconnectBackoff;
+
+    /**
+     * The smoothed round trip to the server measured by the latency probes, in nanoseconds, -1 if unknown.
+     */
+    private volatile long latencyNanos = -1;
+
+    /**
+     * The counter of the receipts of the latency probes.
+     */
+    private final AtomicLong probeReceipts = new AtomicLong();
+
+    /**
+     * The counter of the payloads sent in chunks, part of their id.
+     */
+    private final AtomicLong chunkedMessages = new AtomicLong();
+
+    /**
+     * The websockets subscriptions open so far with this client, per topic. They are renewed after a reconnection.
+     */
+    private final ConcurrentHashMap<String, TopicSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * The routers of the subscriptions shared by the handlers of many destinations, per subscribed destination.
+     */
+    private final ConcurrentHashMap<String, DestinationRouter> routers = new ConcurrentHashMap<>();
+
+    /**
+     * The handlers of the topics subscribed through {@link #subscribeToTopicAsync(String, Class, BiConsumer)},
+     * per topic.
+     */
+    private final ConcurrentHashMap<String, TopicListeners> topicListeners = new ConcurrentHashMap<>();
+
+    /**
+     * The requests sent one at a time, whose replies are matched in order, per topic.
+     */
+    private final ConcurrentHashMap<String, SerialRequests> serialRequests = new ConcurrentHashMap<>();
+
+    /**
+     * The publishers of the topics subscribed through {@link #topicPublisher(String, Class, int, OverflowStrategy)}.
+     */
+    private final CopyOnWriteArrayList<TopicPublisher<?>> publishers = new CopyOnWriteArrayList<>();
+
+    /**
+     * The pipelined requests waiting for their reply.
+     */
+    private final PendingRequests pendingRequests = new PendingRequests();
+
+    /**
+     * The limiters of the pipelined requests in flight, per topic.
+     */
+    private final ConcurrentHashMap<String, InFlightLimiter> inFlightLimiters = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an instance of a websockets client to subscribe, send and receive messages from a websockets end-point,
+     * with the default configuration.
      * 
      * @param url the websockets end-point
      * @throws ExecutionException if the computation threw an exception
      * @throws InterruptedException if the current thread was interrupted
      */
     public StompClient(String url) throws ExecutionException, InterruptedException {
+        this(url, StompClientConfig.defaults());
+    }
+
+    /**
+     * Creates an instance of a websockets client to subscribe, send and receive messages from a websockets end-point.
+     *
+     * @param url the websockets end-point
+     * @param config the configuration of the client
+     * @throws ExecutionException if the computation threw an exception
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public StompClient(String url, StompClientConfig config) throws ExecutionException, InterruptedException {
+        this(url, config, new StompClientRuntime(Runtime.getRuntime().availableProcessors(), config.dispatchLanes), true);
+    }
+
+    /**
+     * Creates an instance of a websockets client that uses the given runtime.
+     *
+     * @param url the websockets end-point
+     * @param config the configuration of the client
+     * @param runtime the transport resources of the client
+     * @param ownRuntime true if the runtime must be closed with the client
+     * @throws ExecutionException if the computation threw an exception
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    StompClient(String url, StompClientConfig config, StompClientRuntime runtime, boolean ownRuntime) throws ExecutionException, InterruptedException {
         this.url = url;
+        this.config = config;
         this.clientKey = generateClientKey();
+        this.reconnectBackoff = new Backoff(config.reconnectInitialDelayMillis, config.reconnectMaxDelayMillis, config.reconnectJitter);
+
+        this.runtime = runtime;
+        this.ownRuntime = ownRuntime;
+        this.taskScheduler = runtime.taskScheduler();
+
+        this.batching = config.batching
+                ? Batching.of(config.batchLingerMillis, config.batchMaxBytes, config.batchMaxFrames, taskScheduler.getScheduledExecutor())
+                : Batching.disabled();
+        this.webSocketClient = new SingleWriterWebSocketClient(new StandardWebSocketClient(runtime.container()), batching, config.messageBufferBytes);
+
+        this.stompClient = new WebSocketStompClient(webSocketClient);
+        this.stompClient.setInboundMessageSizeLimit(config.messageBufferBytes); // default 64 * 1024
+        this.tracer = config.traceSampleRate > 0 ? new MessageTracer(config.traceSampleRate) : MessageTracer.DISABLED;
+        this.messageConverter = new CodecMessageConverter(config.codecs, config.metrics, tracer, new Compression(config.compressionThresholdBytes, config.messageBufferBytes, config.chunkedMessageMaxBytes));
+        this.stompClient.setMessageConverter(messageConverter);
+        this.stompClient.setTaskScheduler(taskScheduler);
+        this.stompClient.setReceiptTimeLimit(config.receiptTimeoutMillis);
+        this.stompClient.setDefaultHeartbeat(new long[] { config.heartbeatSendMillis, config.heartbeatReceiveMillis });
+
+        this.dispatcher = createDispatcher();
+
+        try {
+            this.offlineBuffer = config.offlineBufferBytes > 0
+                    ? new OfflineBuffer(config.offlineBufferBytes, config.offlineOverflowPolicy, config.offlineSpillFile, config.offlineSpillBytes)
+                    : null;
+        }
+        catch (IOException e) {
+            throw InternalFailureException.of(e);
+        }
+
+        this.lastValues = config.lastValueCacheSize > 0 ? new LastValueCache(config.lastValueCacheSize, config.lastValueCacheTtlMillis) : null;
+        this.responses = !config.responseCacheTtls.isEmpty() ? new ResponseCache(config.responseCacheMaxEntries, config.responseCacheMaxBytes, config.metrics) : null;
+
+        config.metrics.gauge("stomp.dispatch.queue.depth", dispatcher::queueDepth);
+        config.metrics.gauge("stomp.offline.buffered.bytes", () -> offlineBuffer != null ? offlineBuffer.metrics().bufferedBytes : 0);
+        config.metrics.gauge("stomp.latency.micros", () -> latencyNanos < 0 ? -1 : latencyNanos / 1000);
+        config.metrics.gauge("stomp.lastvalue.cache.size", () -> lastValues != null ? lastValues.size() : 0);
+        config.metrics.gauge("stomp.response.cache.size", () -> responses != null ? responses.size() : 0);
+        config.metrics.gauge("stomp.response.cache.bytes", () -> responses != null ? responses.bytes() : 0);
+
+        runtime.register(this);
+        try {
+            connect();
+        }
+        catch (ExecutionException | InterruptedException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
 
-        // container configuration with the message size limit
-        WsWebSocketContainer wsWebSocketContainer = new WsWebSocketContainer();
-        wsWebSocketContainer.setDefaultMaxTextMessageBufferSize(MESSAGE_SIZE_LIMIT); // default 8192
-        wsWebSocketContainer.setDefaultMaxBinaryMessageBufferSize(MESSAGE_SIZE_LIMIT); // default 8192
+    private Dispatcher createDispatcher() {
+        if (config.dispatchMode == DispatchMode.INLINE)
+            return Dispatcher.inline();
 
-        ThreadPoolTaskScheduler threadPoolTaskScheduler = new ThreadPoolTaskScheduler();
-        threadPoolTaskScheduler.setPoolSize(Runtime.getRuntime().availableProcessors());
-        threadPoolTaskScheduler.initialize();
+        if (config.dispatchMode == DispatchMode.VIRTUAL_THREADS) {
+            Executor executor = config.dispatchExecutor != null ? config.dispatchExecutor : runtime.virtualThreadExecutor();
+            if (executor != null)
+                return Dispatcher.perKey(executor, config.dispatchQueueCapacity, config.dispatchRejectionPolicy, config.metrics);
 
-        this.stompClient = new WebSocketStompClient(new StandardWebSocketClient(wsWebSocketContainer));
-        this.stompClient.setInboundMessageSizeLimit(MESSAGE_SIZE_LIMIT); // default 64 * 1024
-        this.stompClient.setMessageConverter(new GsonMessageConverter());
-        this.stompClient.setTaskScheduler(threadPoolTaskScheduler);
-        connect();
+            LOGGER.info("[WsClient] No virtual threads on this JVM: the handlers run on the dispatch executor");
+        }
+
+        Executor executor = config.dispatchExecutor != null ? config.dispatchExecutor : runtime.dispatchExecutor();
+        return Dispatcher.ordered(executor, config.dispatchLanes, config.dispatchQueueCapacity, config.dispatchRejectionPolicy, config.metrics);
     }
 
     /**
@@ -108,10 +336,48 @@ public class StompClient implements AutoCloseable {
         return this.clientKey;
     }
 
+    /**
+     * Yields the state of the connection of this client.
+     * @return the state
+     */
+    public ConnectionState getConnectionState() {
+        return state.get();
+    }
+
+    /**
+     * Yields the round trip to the server, smoothed over the last latency probes.
+     * @return the round trip in milliseconds, or -1 if unknown, since the latency probes are disabled
+     *         or none was acknowledged yet
+     */
+    public double getLatencyMillis() {
+        long latency = latencyNanos;
+        return latency < 0 ? -1 : latency / 1_000_000.0;
+    }
+
+    /**
+     * Adds a listener of the changes of the state of the connection of this client, and of the failed attempts
+     * to reconnect. The listener runs on the thread that detects the change, so it must not block.
+     * @param listener the listener
+     */
+    public void addConnectionListener(Consumer<ConnectionEvent> listener) {
+        connectionListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener of the changes of the state of the connection of this client.
+     * @param listener the listener
+     */
+    public void removeConnectionListener(Consumer<ConnectionEvent> listener) {
+        connectionListeners.remove(listener);
+    }
+
 
     /**
      * Subscribes and sends a request for the given topic, expecting a result of the given type and
-     * bearing the given payload. The subscription is recycled.
+     * bearing the given payload. The subscription is recycled. If pipelining is enabled in the configuration,
+     * more requests per topic can wait for their reply at the same time, up to the configured limit;
+     * otherwise, the requests for the same topic are sent one at a time. Called from a virtual thread,
+     * the wait for the reply does not hold its carrier thread: the client takes no monitor on the way.
      *
      * @param topic the topic
      * @param resultTypeClass the result class type
@@ -120,123 +386,705 @@ public class StompClient implements AutoCloseable {
      * @throws NetworkExceptionResponse if the server returned an error
      * @throws InterruptedException if interrupted while waiting
      */
-    @SuppressWarnings("unchecked")
 	public <T> T subscribeAndSend(String topic, Class<T> resultTypeClass, Optional<Object> payload) throws InterruptedException {
+        CompletableFuture<T> result = subscribeAndSendAsync(topic, resultTypeClass, payload);
+
+        try {
+            return Dispatcher.await(result);
+        }
+        catch (InterruptedException e) {
+            result.cancel(false);
+            throw e;
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            else
+                throw InternalFailureException.of(e.getCause());
+        }
+    }
+
+    /**
+     * Subscribes and sends a request for the given topic, expecting a result of the given type and
+     * bearing the given payload, without blocking the caller. The subscription is recycled.
+     * Cancelling the returned future withdraws the request if it has not been sent yet, and
+     * stops waiting for its reply otherwise. If the responses of the topic are cached by the configuration
+     * of this client, an identical request is answered from memory, or shares the identical request in flight.
+     *
+     * @param topic the topic
+     * @param resultTypeClass the result class type
+     * @param payload the payload, if any
+     * @return the future result of the request, completed exceptionally with a {@link NetworkExceptionResponse}
+     *         if the server returned an error
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> subscribeAndSendAsync(String topic, Class<T> resultTypeClass, Optional<Object> payload) {
+        long ttlMillis = responses != null ? config.responseCacheTtlFor(topic) : 0;
+        if (ttlMillis == 0)
+            return (CompletableFuture<T>) request(topic, resultTypeClass, payload);
+
+        // the request is encoded once, as the key of its response and as the payload sent on a miss
+        byte[] request;
+        try {
+            request = messageConverter.encode(payload.orElse(null), config.contentTypeFor(topic));
+        }
+        catch (RuntimeException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        Optional<Object> encoded = Optional.of(new EncodedPayload(request));
+        return (CompletableFuture<T>) responses.get(topic, resultTypeClass, request, ttlMillis,
+                () -> request(topic, resultTypeClass, encoded));
+    }
+
+    /**
+     * Subscribes and sends a request for the given topic, whatever the response cache.
+     *
+     * @param topic the topic
+     * @param resultTypeClass the result class type
+     * @param payload the payload, if any
+     * @return the future result of the request
+     */
+    private ReplyFuture request(String topic, Class<?> resultTypeClass, Optional<Object> payload) {
         String resultTopic = "/user/" + clientKey + topic;
-        Object result;
+        ReplyFuture result = new ReplyFuture();
 
-        BlockingQueue<Object> queue = queues.computeIfAbsent(topic, _key -> new LinkedBlockingQueue<>(1));
-        synchronized (queue) {
-            subscribe(resultTopic, resultTypeClass, queue);
-            send(topic, payload);
-            result = queue.take();
+        if (config.metrics != MetricsRegistry.NOOP || tracer.isEnabled()) {
+            long start = System.nanoTime();
+            result.whenComplete((_value, throwable) -> {
+                long nanos = System.nanoTime() - start;
+                config.metrics.requestCompleted(topic, nanos, throwable == null);
+                tracer.requestCompleted(topic, nanos, throwable == null);
+            });
         }
-        LOGGER.info("[WsClient] Received message from topic " + topic);
 
-        if (result instanceof ErrorModel)
-            throw new NetworkExceptionResponse((ErrorModel) result);
-        else if (result instanceof GsonMessageConverter.NullObject)
-            return null;
-        else
-            return (T) result;
+        if (config.pipelining) {
+            subscribeAsync(resultTopic, () -> new CorrelatingFrameHandler(pendingRequests)).whenComplete((_subscription, throwable) -> {
+                if (throwable != null)
+                    result.completeExceptionally(throwable);
+                else
+                    sendPipelined(topic, resultTypeClass, payload, result);
+            });
+        }
+        else {
+            SerialRequests requests = serialRequests.computeIfAbsent(topic, _key -> new SerialRequests(taskScheduler.getScheduledExecutor(), config.serialReplyTimeoutMillis));
+            subscribeAsync(resultTopic, () -> new FrameHandler<>(resultTypeClass, requests)).whenComplete((_subscription, throwable) -> {
+                if (throwable != null)
+                    result.completeExceptionally(throwable);
+                else
+                    requests.submit(result, () -> send(topic, payload));
+            });
+        }
+
+        return result;
+    }
+
+    /**
+     * Subscribes and sends a request for the given topic, like {@link #subscribeAndSendAsync(String, Class, Optional)},
+     * but completes the returned future exceptionally with a {@link TimeoutException} if no reply arrives
+     * within the given time.
+     *
+     * @param topic the topic
+     * @param resultTypeClass the result class type
+     * @param payload the payload, if any
+     * @param timeout the maximal time to wait for the reply
+     * @param unit the time unit of {@code timeout}
+     * @return the future result of the request
+     */
+    public <T> CompletableFuture<T> subscribeAndSendAsync(String topic, Class<T> resultTypeClass, Optional<Object> payload, long timeout, TimeUnit unit) {
+        CompletableFuture<T> result = subscribeAndSendAsync(topic, resultTypeClass, payload);
+        if (result.isDone())
+            return result; // also after close, when the scheduler is gone
+
+        ScheduledFuture<?> timer = taskScheduler.getScheduledExecutor().schedule(
+                () -> result.completeExceptionally(new TimeoutException("No reply from topic " + topic + " within " + timeout + " " + unit)),
+                timeout,
+                unit
+        );
+        result.whenComplete((_value, _throwable) -> timer.cancel(false));
+
+        return result;
+    }
+
+    /**
+     * Sends a request tagged with a fresh correlation id, whose reply completes the given future.
+     * At most {@code maxInFlightPerTopic} requests per topic wait for their reply at the same time;
+     * the others wait for a slot without blocking the caller.
+     *
+     * @param topic the topic
+     * @param resultTypeClass the result class type
+     * @param payload the payload, if any
+     * @param result the future to complete with the reply
+     */
+    private void sendPipelined(String topic, Class<?> resultTypeClass, Optional<Object> payload, ReplyFuture result) {
+        InFlightLimiter limiter = inFlightLimiters.computeIfAbsent(topic, _key -> new InFlightLimiter(config.maxInFlightPerTopic));
+
+        limiter.submit(result, () -> {
+            // cancelled or timed out while waiting for a slot
+            if (result.isDone())
+                return false;
+
+            PendingRequest request = pendingRequests.register(resultTypeClass, result);
+            StompHeaders stompHeaders = headersFor(topic);
+            stompHeaders.set(PendingRequests.CORRELATION_ID_HEADER, request.correlationId);
+
+            try {
+                send(stompHeaders, payload);
+            }
+            catch (RuntimeException e) {
+                pendingRequests.remove(request.correlationId);
+                result.completeExceptionally(e);
+                return false;
+            }
+
+            result.whenComplete((_value, _throwable) -> {
+                pendingRequests.remove(request.correlationId);
+                limiter.release();
+            });
+
+            return true;
+        });
     }
 
     /**
-     * Sends an optional payload to a destination.
+     * Sends an optional payload to a destination. The payload is encoded with the codec
+     * of the content type configured for the destination. If the offline buffer is enabled in the configuration,
+     * a message sent while disconnected is buffered and sent on reconnection, in order.
      * @param destination the destination
      * @param payload the payload
+     * @throws ConnectionLostException if this client is not connected and the message cannot be buffered
      */
     public void send(String destination, Optional<Object> payload) {
-        LOGGER.info("[WsClient] Sending message to destination " + destination);
-        synchronized (stompSessionLock) {
-            stompSession.send(destination, payload.orElse(null));
+        StompHeaders stompHeaders = headersFor(destination);
+        if (offlineBuffer == null) {
+            send(stompHeaders, payload);
+            return;
         }
+
+        Connection connection = this.connection;
+        if (connection != null && offlineBuffer.isIdle()) {
+            try {
+                send(stompHeaders, payload);
+                return;
+            }
+            catch (RuntimeException e) {
+                // buffered only if the connection was lost in the meantime
+                if (this.connection == connection)
+                    throw e;
+            }
+        }
+
+        // a closed client never replays its buffer
+        if (state.get() == ConnectionState.CLOSED)
+            throw new ConnectionLostException("The client of " + url + " is closed");
+
+        offlineBuffer.offer(stompHeaders, messageConverter.encode(payload.orElse(null), stompHeaders.getContentType()));
+
+        // reconnected in the meantime
+        replayOfflineMessages();
+    }
+
+    /**
+     * Sends the messages of the offline buffer, in order, if connected.
+     */
+    private void replayOfflineMessages() {
+        Connection connection = this.connection;
+        if (offlineBuffer == null || connection == null)
+            return;
+
+        offlineBuffer.drain(entry -> {
+            if (this.connection != connection)
+                throw new ConnectionLostException("Connection to " + url + " lost");
+
+            sendEncoded(connection.session, entry.headers, entry.payload);
+        });
+    }
+
+    /**
+     * Yields a snapshot of the buffer of the messages sent while disconnected.
+     * @return the snapshot, or {@code null} if the offline buffer is disabled
+     */
+    public OfflineBufferMetrics getOfflineBufferMetrics() {
+        return offlineBuffer != null ? offlineBuffer.metrics() : null;
+    }
+
+    /**
+     * Yields the headers of a message for the given destination, with the content type configured for the destination.
+     * @param destination the destination
+     * @return the headers
+     */
+    private StompHeaders headersFor(String destination) {
+        StompHeaders stompHeaders = new StompHeaders();
+        stompHeaders.setDestination(destination);
+        stompHeaders.setContentType(config.contentTypeFor(destination));
+        return stompHeaders;
+    }
+
+    /**
+     * Sends an optional payload with the given headers, which include the destination.
+     * @param stompHeaders the headers
+     * @param payload the payload
+     * @throws ConnectionLostException if this client is not connected
+     */
+    private void send(StompHeaders stompHeaders, Optional<Object> payload) {
+        Connection connection = this.connection;
+        if (connection == null)
+            throw new ConnectionLostException("Not connected to " + url);
+
+        if (config.chunkBytes == 0)
+            connection.session.send(stompHeaders, payload.orElse(null));
+        else
+            sendEncoded(connection.session, stompHeaders, messageConverter.encode(payload.orElse(null), stompHeaders.getContentType()));
+    }
+
+    /**
+     * Sends an encoded payload with the given headers, in chunks if it is larger than the chunk size of
+     * the configuration of this client. The chunks carry the same headers, plus those that the receiver needs
+     * to reassemble them.
+     *
+     * @param session the session
+     * @param stompHeaders the headers, which include the destination
+     * @param payload the encoded payload
+     */
+    private void sendEncoded(StompSession session, StompHeaders stompHeaders, byte[] payload) {
+        if (config.chunkBytes == 0 || payload.length <= config.chunkBytes) {
+            session.send(stompHeaders, new EncodedPayload(payload));
+            return;
+        }
+
+        String id = clientKey + "-" + chunkedMessages.incrementAndGet();
+        int count = (payload.length + config.chunkBytes - 1) / config.chunkBytes;
+        for (int index = 0; index < count; index++) {
+            StompHeaders chunkHeaders = new StompHeaders();
+            chunkHeaders.putAll(stompHeaders);
+            chunkHeaders.set(ChunkedFrameHandler.CHUNK_ID_HEADER, id);
+            chunkHeaders.set(ChunkedFrameHandler.CHUNK_INDEX_HEADER, Integer.toString(index));
+            chunkHeaders.set(ChunkedFrameHandler.CHUNK_COUNT_HEADER, Integer.toString(count));
+
+            int start = index * config.chunkBytes;
+            session.send(chunkHeaders, new EncodedPayload(Arrays.copyOfRange(payload, start, Math.min(start + config.chunkBytes, payload.length))));
+        }
+    }
+
+    /**
+     * Writes the outbound frames waiting to join a batch now, without waiting for their linger time.
+     * It does nothing if batching is disabled.
+     */
+    public void flush() {
+        webSocketClient.flush();
+    }
+
+    /**
+     * Yields the counters of the batches of outbound frames written so far by this client.
+     * @return a snapshot of the counters
+     */
+    public BatchMetrics getBatchMetrics() {
+        return batching.metrics();
     }
 
     /**
-     * Subscribes to a topic and then handles the result published by the topic.
+     * Subscribes to a topic and then handles the result published by the topic. The handler runs as
+     * specified by the dispatch mode of the configuration of this client.
      * @param topic the topic destination
      * @param resultTypeClass the result type class
      * @param handler the handler of the result
      * @param <T> the result type class
      */
     public <T> void subscribeToTopic(String topic, Class<T> resultTypeClass, BiConsumer<T, ErrorModel> handler) {
-    	subscriptions.computeIfAbsent(topic, _topic -> {
-
-    		StompFrameHandler stompHandler = new StompFrameHandler() {
-
-    			@Override
-    			public Type getPayloadType(StompHeaders headers) {
-    				return resultTypeClass;
-    			}
-
-    			@SuppressWarnings("unchecked")
-    			@Override
-    			public void handleFrame(StompHeaders headers, Object payload) {
-                    LOGGER.info("[WsClient] Received message from topic " + _topic);
-
-    				CompletableFuture.runAsync(() -> {
-    					if (payload == null)
-    						handler.accept(null, new ErrorModel(new InternalFailureException("Received a null payload")));
-    					else if (payload instanceof GsonMessageConverter.NullObject)
-    						handler.accept(null, new ErrorModel(new InternalFailureException("Received a null object")));
-    					else if (payload instanceof ErrorModel)
-    						handler.accept(null, (ErrorModel) payload);
-    					else if (payload.getClass() != resultTypeClass)
-    						handler.accept(null, new ErrorModel(new InternalFailureException(String.format("Unexpected payload type [%s]: expected [%s]" + payload.getClass().getName(), resultTypeClass))));
-    					else
-    						handler.accept((T) payload, null);
-    				});
-    			}
-    		};
-
-            return subscribeInternal(topic, stompHandler);
-    	});
+        await(subscribeToTopicAsync(topic, resultTypeClass, handler));
+    }
+
+    /**
+     * Subscribes to some topics at once, without waiting for the server to acknowledge each subscription
+     * before sending the next one, and then handles the results published by the topics.
+     * See {@link #subscribeToTopicAsync(String, Class, BiConsumer)}.
+     *
+     * @param topics the topic destinations
+     * @param resultTypeClass the result type class
+     * @param handler the handler of the results of all topics
+     * @param <T> the result type class
+     * @return the future completed when the server has acknowledged all subscriptions, or completed
+     *         exceptionally as soon as a subscription fails
+     */
+    public <T> CompletableFuture<Void> subscribeToTopicsAsync(Collection<String> topics, Class<T> resultTypeClass, BiConsumer<T, ErrorModel> handler) {
+        return CompletableFuture.allOf(topics.stream()
+                .map(topic -> subscribeToTopicAsync(topic, resultTypeClass, handler))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Subscribes to a topic without blocking the caller, and then handles the result published by the topic.
+     * The handler runs as specified by the dispatch mode of the configuration of this client.
+     * If the last values are cached, the handler is first handed the cached value of the topic, if any.
+     * <p>
+     * The handlers of a topic share a single subscription on the server: each result is decoded once and
+     * handed to all of them in turn, and a handler subscribing to a topic already subscribed is added to them.
+     * They must expect the same result type.
+     *
+     * @param topic the topic destination
+     * @param resultTypeClass the result type class
+     * @param handler the handler of the result
+     * @param <T> the result type class
+     * @return the future completed when the server acknowledges the subscription, or completed exceptionally
+     *         with an {@link InternalFailureException} if no acknowledgement arrives within the receipt timeout
+     *         of the configuration of this client
+     * @throws IllegalStateException if this client already subscribed to the topic with another result type,
+     *         or through a pattern or a publisher
+     */
+    public <T> CompletableFuture<Void> subscribeToTopicAsync(String topic, Class<T> resultTypeClass, BiConsumer<T, ErrorModel> handler) {
+        return subscribeToTopicAsync(topic, resultTypeClass, null, handler);
+    }
+
+    /**
+     * Subscribes to a topic without blocking the caller, and then handles the results published by the topic,
+     * whose last values are cached per key, such as the last price of each instrument of a topic of prices.
+     * See {@link #subscribeToTopicAsync(String, Class, BiConsumer)}. If the last values are cached, the handler
+     * is first handed the cached values of all keys of the topic, and a value published meanwhile may be
+     * handed twice.
+     *
+     * @param topic the topic destination
+     * @param resultTypeClass the result type class
+     * @param keyExtractor the function yielding the key of a result, or {@code null} to cache only the last result,
+     *                     or to join the handlers of the topic whatever their key extractor
+     * @param handler the handler of the result
+     * @param <T> the result type class
+     * @return the future completed when the server acknowledges the subscription
+     * @throws IllegalStateException if this client already subscribed to the topic with another result type
+     *         or another key extractor, or through a pattern or a publisher
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<Void> subscribeToTopicAsync(String topic, Class<T> resultTypeClass, Function<? super T, String> keyExtractor, BiConsumer<T, ErrorModel> handler) {
+        checkTopicListeners(topic, topicListeners.get(topic), resultTypeClass, keyExtractor);
+
+        TopicListeners created = new TopicListeners(topic, resultTypeClass, keyExtractor, dispatcher, payload -> {
+            boolean keyed = keyExtractor != null && payload != null && payload.getClass() == resultTypeClass;
+            cacheLastValue(topic, keyed ? keyExtractor.apply((T) payload) : null, payload);
+        });
+        TopicListeners present = topicListeners.putIfAbsent(topic, created);
+        TopicListeners listeners = present != null ? present : created;
+
+        // checked again, since another caller may have subscribed meanwhile
+        try {
+            checkTopicListeners(topic, listeners, resultTypeClass, keyExtractor);
+        }
+        catch (IllegalStateException e) {
+            topicListeners.remove(topic, created);
+            throw e;
+        }
+
+        // the handler joins the others once the subscription holds, so that a failed one leaves no handler behind
+        CompletableFuture<Void> subscribed = subscribeAsync(topic, () -> listeners).thenApply(_subscription -> {
+            listeners.add(handler, payload -> deliver(payload, resultTypeClass, handler));
+            return null;
+        });
+
+        replayLastValues(topic, topic::equals, resultTypeClass, handler);
+        return subscribed;
     }
 
     /**
-     * Subscribes to a topic and register its queue where to deliver the result. The subscription is recycled.
+     * Checks that a handler can join the handlers of a topic.
+     *
      * @param topic the topic
-     * @param resultTypeClass the result type
-     * @param queue the queue
-     * @param <T> the type of the result
+     * @param listeners the handlers of the topic, or {@code null} if there are none yet
+     * @param resultTypeClass the result type of the handler
+     * @param keyExtractor the key extractor of the handler, possibly {@code null}
+     * @throws IllegalStateException if the topic is subscribed otherwise, or with another result type or key extractor
+     */
+    private void checkTopicListeners(String topic, TopicListeners listeners, Class<?> resultTypeClass, Function<?, String> keyExtractor) {
+        TopicSubscription existing = subscriptions.get(topic);
+        if (existing != null && (listeners == null || existing.handler() != listeners))
+            throw new IllegalStateException("Topic " + topic + " is already subscribed");
+        if (listeners == null)
+            return;
+
+        if (listeners.resultType != resultTypeClass)
+            throw new IllegalStateException("Topic " + topic + " is already subscribed with result type " + listeners.resultType.getName());
+        if (keyExtractor != null && listeners.keyExtractor != keyExtractor)
+            throw new IllegalStateException("Topic " + topic + " is already subscribed with another key extractor");
+    }
+
+    /**
+     * Removes a handler of a topic, added by {@link #subscribeToTopicAsync(String, Class, BiConsumer)} or its
+     * variants. The subscription on the server is kept, so that the handlers added later share it without
+     * subscribing again.
+     *
+     * @param topic the topic destination
+     * @param handler the handler of the result
+     * @return true if the handler was removed, false if it did not handle the topic
      */
-    private <T> void subscribe(String topic, Class<T> resultTypeClass, BlockingQueue<Object> queue) {
-        subscriptions.computeIfAbsent(topic, _topic -> subscribeInternal(_topic, new FrameHandler<>(resultTypeClass, queue)));
+    public boolean removeTopicHandler(String topic, BiConsumer<?, ErrorModel> handler) {
+        TopicListeners listeners = topicListeners.get(topic);
+        return listeners != null && listeners.remove(handler);
     }
 
     /**
-     * Internal method to subscribe to a topic and to get a subscription. The subscription is recycled.
+     * Subscribes to a destination once and handles the results published to those of its destinations that match
+     * a pattern, routed by their {@code destination} header. Many patterns can be routed through the same
+     * subscription, such as {@code /topic/prices.*} on a broker with wildcard destinations, at the cost of a single
+     * subscription on the server. The handlers of a subscription run as specified by the dispatch mode of
+     * the configuration of this client, as if they handled a single topic.
+     * <p>
+     * The segments of the destinations are separated by {@code /} or {@code .}: in a pattern, a {@code *} segment
+     * matches any one segment, and a {@code #} last segment matches all remaining segments, if any. The patterns
+     * matching the same destination should expect the same result type.
+     *
+     * @param subscription the destination subscribed on the server
+     * @param pattern the pattern of the destinations of the results handled
+     * @param resultTypeClass the result type class
+     * @param handler the handler of the results
+     * @param <T> the result type class
+     * @return the future completed when the server acknowledges the subscription, as
+     *         {@link #subscribeToTopicAsync(String, Class, BiConsumer)}
+     * @throws IllegalArgumentException if the pattern is not valid
+     * @throws IllegalStateException if this client already subscribed to the destination with a single handler
+     */
+    public <T> CompletableFuture<Void> subscribeToPatternAsync(String subscription, String pattern, Class<T> resultTypeClass, BiConsumer<T, ErrorModel> handler) {
+        DestinationRouter router = routers.computeIfAbsent(subscription, destination ->
+                new DestinationRouter(destination, dispatcher, (received, payload) -> cacheLastValue(received, null, payload)));
+
+        TopicSubscription existing = subscriptions.get(subscription);
+        if (existing != null && existing.handler() != router)
+            throw new IllegalStateException("Topic " + subscription + " is already subscribed");
+
+        router.addRoute(pattern, resultTypeClass, payload -> deliver(payload, resultTypeClass, handler));
+        CompletableFuture<Void> subscribed = subscribeAsync(subscription, () -> router).thenApply(_subscription -> null);
+
+        if (lastValues != null) {
+            DestinationTrie<Boolean> matcher = new DestinationTrie<>();
+            matcher.add(pattern, true);
+            replayLastValues(subscription, destination -> !matcher.match(destination).isEmpty(), resultTypeClass, handler);
+        }
+
+        return subscribed;
+    }
+
+    /**
+     * Subscribes to a destination once and then handles the results published to those of its destinations that
+     * match a pattern. See {@link #subscribeToPatternAsync(String, String, Class, BiConsumer)}.
+     *
+     * @param subscription the destination subscribed on the server
+     * @param pattern the pattern of the destinations of the results handled
+     * @param resultTypeClass the result type class
+     * @param handler the handler of the results
+     * @param <T> the result type class
+     */
+    public <T> void subscribeToPattern(String subscription, String pattern, Class<T> resultTypeClass, BiConsumer<T, ErrorModel> handler) {
+        await(subscribeToPatternAsync(subscription, pattern, resultTypeClass, handler));
+    }
+
+    /**
+     * Yields the last value received from a destination, if the last values are cached.
+     *
+     * @param destination the destination
+     * @param resultTypeClass the result type class
+     * @param <T> the result type class
+     * @return the last value, or nothing if none is cached with that type
+     */
+    public <T> Optional<T> getLastValue(String destination, Class<T> resultTypeClass) {
+        return getLastValue(destination, null, resultTypeClass);
+    }
+
+    /**
+     * Yields the last value received from a destination for a key, as extracted by the key extractor given
+     * to {@link #subscribeToTopicAsync(String, Class, Function, BiConsumer)}, if the last values are cached.
+     *
+     * @param destination the destination
+     * @param key the key of the value
+     * @param resultTypeClass the result type class
+     * @param <T> the result type class
+     * @return the last value, or nothing if none is cached with that type
+     */
+    public <T> Optional<T> getLastValue(String destination, String key, Class<T> resultTypeClass) {
+        if (lastValues == null)
+            return Optional.empty();
+
+        Object value = lastValues.get(destination, key);
+        return resultTypeClass.isInstance(value) ? Optional.of(resultTypeClass.cast(value)) : Optional.empty();
+    }
+
+    /**
+     * Caches the last value received from a destination, unless it stands for an error.
+     */
+    private void cacheLastValue(String destination, String key, Object payload) {
+        if (lastValues != null && payload != null && !(payload instanceof CodecMessageConverter.NullObject) && !(payload instanceof ErrorModel))
+            lastValues.put(destination, key, payload);
+    }
+
+    /**
+     * Hands the cached last values of some destinations to a new handler, under the dispatch key of its subscription.
+     */
+    private <T> void replayLastValues(String subscription, Predicate<String> destinations, Class<T> resultTypeClass, BiConsumer<T, ErrorModel> handler) {
+        if (lastValues == null)
+            return;
+
+        List<Object> values = lastValues.values(destinations);
+        if (!values.isEmpty())
+            dispatcher.dispatch(subscription, () -> values.forEach(value -> deliver(value, resultTypeClass, handler)));
+    }
+
+    /**
+     * Hands a payload received from a topic to its handler, or the error it stands for.
+     *
+     * @param payload the decoded payload, possibly {@code null}
+     * @param resultTypeClass the result type class expected by the handler
+     * @param handler the handler
+     * @param <T> the result type class
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void deliver(Object payload, Class<T> resultTypeClass, BiConsumer<T, ErrorModel> handler) {
+        if (payload == null)
+            handler.accept(null, new ErrorModel(new InternalFailureException("Received a null payload")));
+        else if (payload instanceof CodecMessageConverter.NullObject)
+            handler.accept(null, new ErrorModel(new InternalFailureException("Received a null object")));
+        else if (payload instanceof ErrorModel)
+            handler.accept(null, (ErrorModel) payload);
+        else if (payload.getClass() != resultTypeClass)
+            handler.accept(null, new ErrorModel(new InternalFailureException(String.format("Unexpected payload type [%s]: expected [%s]", payload.getClass().getName(), resultTypeClass.getName()))));
+        else
+            handler.accept((T) payload, null);
+    }
+
+    /**
+     * Subscribes to a topic and yields a publisher of its messages, with backpressure. Each subscriber of the
+     * publisher receives the messages published after its subscription, as it requests them; the messages
+     * not requested yet are kept in a buffer of the given size per subscriber, whose overflow is
+     * handled by the given strategy. The messages that cannot be decoded, or that are not of the result type,
+     * are logged and dropped. The publisher completes when this client is closed, and fails with
+     * a {@link ConnectionLostException} when this client gives up reconnecting.
+     *
+     * @param topic the topic destination
+     * @param resultTypeClass the result type class
+     * @param bufferSize the maximal number of messages buffered per subscriber
+     * @param overflowStrategy what to do with a new message when the buffer of a subscriber is full
+     * @param <T> the result type class
+     * @return the publisher of the messages of the topic
+     * @throws IllegalStateException if this client already subscribed to the topic
+     */
+    public <T> Publisher<T> topicPublisher(String topic, Class<T> resultTypeClass, int bufferSize, OverflowStrategy overflowStrategy) {
+        TopicPublisher<T> publisher = new TopicPublisher<>(topic, resultTypeClass, bufferSize, overflowStrategy);
+        AtomicBoolean attached = new AtomicBoolean();
+
+        await(subscribeAsync(topic, () -> {
+            attached.set(true);
+            return publisher;
+        }));
+
+        if (!attached.get())
+            throw new IllegalStateException("Topic " + topic + " is already subscribed");
+
+        publishers.add(publisher);
+        return publisher;
+    }
+
+    /**
+     * Subscribes to a topic, unless already subscribed. The subscription is recycled, and renewed after a reconnection.
+     * While this client is reconnecting, the subscription waits for the reconnection.
+     *
      * @param topic the topic
-     * @param handler the frame handler of the topic
-     * @return the stomp subscription
+     * @param handlerSupplier the supplier of the frame handler of the topic, called only if a new subscription is needed
+     * @return the subscription, completed when the server acknowledges it
      */
-    private Subscription subscribeInternal(String topic, StompFrameHandler handler) {
-        CompletableFuture<Boolean> subscriptionCompletion = new CompletableFuture<>();
+    private CompletableFuture<Subscription> subscribeAsync(String topic, Supplier<StompFrameHandler> handlerSupplier) {
+        TopicSubscription subscription = subscriptions.get(topic);
+        if (subscription != null)
+            return subscription.receipt();
+
+        if (state.get() == ConnectionState.CLOSED) {
+            CompletableFuture<Subscription> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new ConnectionLostException("The client of " + url + " is closed"));
+            return failed;
+        }
+
+        TopicSubscription created = new TopicSubscription(topic, handlerSupplier);
+        subscription = subscriptions.putIfAbsent(topic, created);
+        if (subscription != null)
+            return subscription.receipt();
+
+        created.handler();
+
+        // otherwise the subscription is requested when the connection is restored
+        Connection connection = this.connection;
+        if (connection != null)
+            subscribeInternal(created, connection);
+
+        return created.receipt();
+    }
+
+    /**
+     * Internal method to subscribe to a topic. It does not wait for the server to acknowledge the subscription.
+     * A subscription that fails in the current session is forgotten, so that it can be retried.
+     *
+     * @param subscription the subscription
+     * @param connection the connection where the subscription is requested
+     */
+    private void subscribeInternal(TopicSubscription subscription, Connection connection) {
+        if (!subscription.claim(connection.generation))
+            return;
+
+        String topic = subscription.topic;
+        CompletableFuture<Subscription> completion = subscription.receipt();
         StompHeaders stompHeaders = new StompHeaders();
         stompHeaders.setDestination(topic);
         stompHeaders.setReceipt("receipt_" + topic);
+        long start = System.nanoTime();
+
+        ChunkedFrameHandler handler = new ChunkedFrameHandler(subscription.handler(), messageConverter, config.chunkedMessageMaxBytes,
+                ChunkedFrameHandler.MAX_TRANSFERS, ChunkedFrameHandler.TRANSFER_TIMEOUT_MILLIS);
+        connection.addHandler(handler);
 
         Subscription stompSubscription;
-        synchronized (stompSessionLock) {
-            stompSubscription = stompSession.subscribe(stompHeaders, handler);
+        try {
+            stompSubscription = connection.session.subscribe(stompHeaders, handler);
+        }
+        catch (RuntimeException e) {
+            failSubscription(subscription, connection, InternalFailureException.of(e));
+            return;
         }
 
-        stompSubscription.addReceiptTask(() -> subscriptionCompletion.complete(true));
-        stompSubscription.addReceiptLostTask(() -> subscriptionCompletion.complete(false));
+        stompSubscription.addReceiptTask(() -> {
+            LOGGER.info("[WsClient] Subscribed to topic " + topic);
+            config.metrics.subscribed(topic, System.nanoTime() - start);
+            completion.complete(stompSubscription);
+        });
+        stompSubscription.addReceiptLostTask(() -> failSubscription(subscription, connection, new InternalFailureException("Subscription to " + topic + " failed")));
+    }
 
+    /**
+     * Fails a subscription, unless its connection was lost in the meantime, since then it gets renewed on reconnection.
+     *
+     * @param subscription the subscription
+     * @param connection the connection where the subscription was requested
+     * @param cause the cause of the failure
+     */
+    private void failSubscription(TopicSubscription subscription, Connection connection, InternalFailureException cause) {
+        if (this.connection != connection)
+            return;
+
+        subscriptions.remove(subscription.topic, subscription);
+        subscription.receipt().completeExceptionally(cause);
+    }
+
+    /**
+     * Waits for the completion of a future.
+     * @param future the future
+     * @param <V> the type of the value of the future
+     * @return the value of the future
+     * @throws InternalFailureException if the future completed exceptionally or the current thread was interrupted
+     */
+    private static <V> V await(CompletableFuture<V> future) {
         try {
-            boolean successfulSubscription = subscriptionCompletion.get();
-            if (!successfulSubscription) {
-                throw new InternalFailureException("Subscription to " + topic + " failed");
-            }
+            return Dispatcher.await(future);
         }
-        catch (InterruptedException | ExecutionException e) {
+        catch (ExecutionException e) {
+            throw InternalFailureException.of(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw InternalFailureException.of(e);
         }
-
-        LOGGER.info("[WsClient] Subscribed to topic " + topic);
-        return stompSubscription;
     }
 
     /**
@@ -249,30 +1097,237 @@ public class StompClient implements AutoCloseable {
     private void connect() throws ExecutionException, InterruptedException {
         LOGGER.info("[WsClient] Connection to " + this.url);
 
+        Connection connected = connectAsync().get();
+        connection = connected;
+        state.set(ConnectionState.CONNECTED);
+
+        LOGGER.info("[WsClient] Connected to stomp session " + connected.session.getSessionId());
+        fire(new ConnectionEvent(ConnectionState.CONNECTED, 0, null, 0));
+        startMonitoring(connected);
+    }
+
+    private CompletableFuture<Connection> connectAsync() {
         WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
         headers.add("uuid", clientKey);
 
-        synchronized (stompSessionLock) {
-        	stompSession = stompClient.connect(url, headers, new StompClientSessionHandler(this::onSessionError)).get();
+        StompClientSessionHandler sessionHandler = new StompClientSessionHandler(this::onSessionError);
+        return stompClient.connect(url, headers, sessionHandler).completable()
+                .thenApply(session -> new Connection(session, sessionGenerations.incrementAndGet(), webSocketClient.current(), sessionHandler.connectedHeaders()));
+    }
+
+    /**
+     * Starts the periodic checks of a new connection: the detection of missed heart-beats, if the server agreed
+     * to send them, and the latency probes, if enabled.
+     *
+     * @param monitored the connection
+     */
+    private void startMonitoring(Connection monitored) {
+        ScheduledExecutorService scheduler = taskScheduler.getScheduledExecutor();
+
+        monitored.connectedHeaders.thenAccept(connectedHeaders -> {
+            // the server sends heart-beats every max(sx, cy), if both are positive
+            long[] serverHeartbeat = connectedHeaders.getHeartbeat();
+            long interval = serverHeartbeat != null && serverHeartbeat[0] > 0 && config.heartbeatReceiveMillis > 0
+                    ? Math.max(serverHeartbeat[0], config.heartbeatReceiveMillis)
+                    : 0;
+
+            // checked twice per interval, so that a silence is noticed at most half an interval late
+            if (interval > 0)
+                monitored.addTask(scheduler.scheduleAtFixedRate(() -> checkHeartbeats(monitored, interval), interval, Math.max(1, interval / 2), TimeUnit.MILLISECONDS));
+        }).exceptionally(throwable -> {
+            LOGGER.error("[WsClient] Cannot monitor the heart-beats of " + url, throwable);
+            return null;
+        });
+
+        if (config.latencyProbeDestination != null)
+            monitored.addTask(scheduler.scheduleAtFixedRate(() -> probeLatency(monitored), 0, config.latencyProbeIntervalMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Reconnects if the server has been silent for too many heart-beat intervals, since the connection is probably half-open.
+     *
+     * @param monitored the connection
+     * @param interval the interval of the heart-beats of the server, in milliseconds
+     */
+    private void checkHeartbeats(Connection monitored, long interval) {
+        if (connection != monitored || monitored.transport == null) {
+            monitored.cancelTasks();
+            return;
+        }
+
+        long silenceMillis = TimeUnit.NANOSECONDS.toMillis(monitored.transport.nanosSinceLastRead());
+        if (silenceMillis > interval * config.heartbeatMissedLimit)
+            onSessionError(monitored.session, new ConnectionLostException("No heart-beat from " + url + " for " + silenceMillis + " ms"));
+    }
+
+    /**
+     * Sends an empty message with a receipt, whose round trip updates the latency.
+     * @param monitored the connection
+     */
+    private void probeLatency(Connection monitored) {
+        if (connection != monitored) {
+            monitored.cancelTasks();
+            return;
         }
 
-        LOGGER.info("[WsClient] Connected to stomp session " + stompSession.getSessionId());
+        StompHeaders stompHeaders = new StompHeaders();
+        stompHeaders.setDestination(config.latencyProbeDestination);
+        stompHeaders.setReceipt("probe_" + probeReceipts.incrementAndGet());
+        long start = System.nanoTime();
+
+        try {
+            StompSession.Receiptable receiptable = monitored.session.send(stompHeaders, null);
+            receiptable.addReceiptTask(() -> {
+                long roundTrip = System.nanoTime() - start;
+                long latency = latencyNanos;
+                latencyNanos = latency < 0 ? roundTrip : latency + (roundTrip - latency) / 4;
+            });
+            receiptable.addReceiptLostTask(() -> LOGGER.info("[WsClient] Lost the receipt of a latency probe to " + url));
+        }
+        catch (RuntimeException e) {
+            LOGGER.info("[WsClient] Cannot send a latency probe to " + url + ": " + e.getMessage());
+        }
     }
 
-    private void onSessionError(Throwable throwable) {
+    /**
+     * Handles the failure of a session: the requests waiting for a reply in the session fail, the subscriptions wait
+     * for their renewal and the reconnection starts, with exponential backoff.
+     *
+     * @param session the session
+     * @param throwable the cause of the failure
+     */
+    private void onSessionError(StompSession session, Throwable throwable) {
+        Connection lost = connection;
+        if (lost == null || lost.session != session || !state.compareAndSet(ConnectionState.CONNECTED, ConnectionState.RECONNECTING))
+            return;
+
         LOGGER.info("[WsClient] Got a session error: " + throwable.getMessage());
+        long outageStart = System.nanoTime();
+        connection = null;
+        lost.close();
+
+        // the session might still be open, if the error was in a message
+        disconnectQuietly(session);
+
+        subscriptions.values().forEach(TopicSubscription::reset);
+        ConnectionLostException cause = new ConnectionLostException("Connection to " + url + " lost: " + throwable.getMessage());
+        pendingRequests.failAll(cause);
+        serialRequests.values().forEach(requests -> requests.failInFlight(cause));
+
+        config.metrics.connectionLost();
+        fire(new ConnectionEvent(ConnectionState.RECONNECTING, 0, throwable, 0));
+        scheduleReconnection(1, outageStart);
+    }
+
+    private void scheduleReconnection(int attempt, long outageStart) {
+        taskScheduler.getScheduledExecutor().schedule(() -> reconnect(attempt, outageStart), reconnectBackoff.delayMillis(attempt), TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect(int attempt, long outageStart) {
+        if (state.get() != ConnectionState.RECONNECTING)
+            return;
+
+        LOGGER.info("[WsClient] Reconnection to " + url + ", attempt " + attempt);
+
+        connectAsync().whenComplete((restored, throwable) -> {
+            if (throwable != null) {
+                LOGGER.info("[WsClient] Cannot reconnect to " + url + ": " + throwable.getMessage());
+
+                if (attempt < config.reconnectMaxAttempts) {
+                    fire(new ConnectionEvent(ConnectionState.RECONNECTING, attempt, throwable, 0));
+                    scheduleReconnection(attempt + 1, outageStart);
+                }
+                else if (state.compareAndSet(ConnectionState.RECONNECTING, ConnectionState.CLOSED))
+                    giveUp(attempt, throwable);
+
+                return;
+            }
+
+            connection = restored;
+
+            // closed in the meantime
+            if (!state.compareAndSet(ConnectionState.RECONNECTING, ConnectionState.CONNECTED)) {
+                connection = null;
+                disconnectQuietly(restored.session);
+                return;
+            }
+
+            LOGGER.info("[WsClient] Reconnected to stomp session " + restored.session.getSessionId());
+            long outageNanos = System.nanoTime() - outageStart;
+            config.metrics.reconnected(attempt, outageNanos);
+            fire(new ConnectionEvent(ConnectionState.CONNECTED, attempt, null, TimeUnit.NANOSECONDS.toMillis(outageNanos)));
+
+            // all subscriptions are renewed at once, without waiting for each acknowledgement
+            subscriptions.values().forEach(subscription -> subscribeInternal(subscription, restored));
+            replayOfflineMessages();
+            startMonitoring(restored);
+        });
+    }
+
+    private void giveUp(int attempts, Throwable throwable) {
+        LOGGER.error("[WsClient] Gave up reconnecting to " + url + " after " + attempts + " attempts");
+
+        ConnectionLostException cause = new ConnectionLostException("Cannot reconnect to " + url + ": " + throwable.getMessage());
+        failRequests(cause);
+        subscriptions.values().forEach(subscription -> subscription.receipt().completeExceptionally(cause));
+        subscriptions.clear();
+        routers.clear();
+        topicListeners.clear();
+        if (lastValues != null)
+            lastValues.clear();
+        if (responses != null)
+            responses.clear();
+        publishers.forEach(publisher -> publisher.fail(cause));
+        publishers.clear();
+
+        // the messages sent while reconnecting will never be replayed
+        closeOfflineBuffer();
+
+        fire(new ConnectionEvent(ConnectionState.CLOSED, attempts, throwable, 0));
+    }
+
+    /**
+     * Completes exceptionally the requests waiting for their reply or for their turn, none of which will get a reply.
+     * @param cause the cause of the failure
+     */
+    private void failRequests(Throwable cause) {
+        // the waiting requests first, so that the slots released by the others do not send any of them
+        inFlightLimiters.values().forEach(limiter -> limiter.failAll(cause));
+        pendingRequests.failAll(cause);
+        serialRequests.values().forEach(requests -> requests.failAll(cause));
+        serialRequests.clear();
+    }
+
+    private void closeOfflineBuffer() {
+        if (offlineBuffer == null)
+            return;
 
         try {
-            // on session error, the session gets closed so we reconnect to the websocket endpoint
-            subscriptions.values().forEach(Subscription::unsubscribe);
-            subscriptions.clear();
-            queues.clear();
+            offlineBuffer.close();
+        }
+        catch (IOException e) {
+            LOGGER.info("[WsClient] Cannot close the offline buffer: " + e.getMessage());
+        }
+    }
 
-            connect();
+    private void fire(ConnectionEvent event) {
+        for (Consumer<ConnectionEvent> listener: connectionListeners) {
+            try {
+                listener.accept(event);
+            }
+            catch (RuntimeException e) {
+                LOGGER.error("[WsClient] Connection listener failed", e);
+            }
         }
-        catch (ExecutionException | InterruptedException e) {
-            LOGGER.info("[WsClient] Cannot reconnect to session");
-            throw InternalFailureException.of(e);
+    }
+
+    private static void disconnectQuietly(StompSession session) {
+        try {
+            if (session.isConnected())
+                session.disconnect();
+        }
+        catch (RuntimeException e) {
+            LOGGER.info("[WsClient] Cannot disconnect stomp session " + session.getSessionId() + ": " + e.getMessage());
         }
     }
 
@@ -280,16 +1335,43 @@ public class StompClient implements AutoCloseable {
     public void close() {
         LOGGER.info("[WsClient] Closing session and websocket client");
 
-    	subscriptions.values().forEach(Subscription::unsubscribe);
+        boolean wasOpen = state.getAndSet(ConnectionState.CLOSED) != ConnectionState.CLOSED;
+
+    	ConnectionLostException cause = new ConnectionLostException("The client of " + url + " is closed");
+    	failRequests(cause);
+
+    	// the subscriptions not acknowledged yet never will be
+    	subscriptions.values().forEach(subscription -> {
+    	    subscription.receipt().thenAccept(Subscription::unsubscribe);
+    	    subscription.receipt().completeExceptionally(cause);
+    	});
     	subscriptions.clear();
-    	queues.clear();
+    	routers.clear();
+    	topicListeners.clear();
+    	if (lastValues != null)
+    	    lastValues.clear();
+    	if (responses != null)
+    	    responses.clear();
+    	publishers.forEach(TopicPublisher::complete);
+    	publishers.clear();
 
-    	synchronized (stompSessionLock) {
-    		if (stompSession != null)
-    			stompSession.disconnect();
+    	Connection connection = this.connection;
+    	this.connection = null;
+    	if (connection != null) {
+    	    connection.close();
+    	    disconnectQuietly(connection.session);
     	}
 
     	stompClient.stop();
+
+    	runtime.unregister(this);
+    	if (ownRuntime)
+    	    runtime.close();
+
+    	closeOfflineBuffer();
+
+    	if (wasOpen)
+    	    fire(new ConnectionEvent(ConnectionState.CLOSED, 0, null, 0));
     }
 
     /**
@@ -308,6 +1390,56 @@ public class StompClient implements AutoCloseable {
         }
     }
 
+    /**
+     * A session of this client, with its generation, increasing at each reconnection,
+     * and the periodic tasks that check it.
+     */
+    private static class Connection {
+        private final StompSession session;
+        private final long generation;
+        private final SingleWriterWebSocketSession transport;
+        private final CompletableFuture<StompHeaders> connectedHeaders;
+        private final CopyOnWriteArrayList<ScheduledFuture<?>> tasks = new CopyOnWriteArrayList<>();
+        private final CopyOnWriteArrayList<ChunkedFrameHandler> handlers = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled;
+
+        private Connection(StompSession session, long generation, SingleWriterWebSocketSession transport, CompletableFuture<StompHeaders> connectedHeaders) {
+            this.session = session;
+            this.generation = generation;
+            this.transport = transport;
+            this.connectedHeaders = connectedHeaders;
+        }
+
+        private void addTask(ScheduledFuture<?> task) {
+            tasks.add(task);
+
+            // cancelled in the meantime
+            if (cancelled)
+                task.cancel(false);
+        }
+
+        private void cancelTasks() {
+            cancelled = true;
+            tasks.forEach(task -> task.cancel(false));
+        }
+
+        private void addHandler(ChunkedFrameHandler handler) {
+            handlers.add(handler);
+
+            // closed in the meantime
+            if (cancelled)
+                handler.close();
+        }
+
+        /**
+         * Cancels the tasks of this connection and forgets the payloads arriving in chunks, once it is lost or closed.
+         */
+        private void close() {
+            cancelTasks();
+            handlers.forEach(ChunkedFrameHandler::close);
+        }
+    }
+
     private static String bytesToHex(byte[] bytes) {
         byte [] HEX_ARRAY = "0123456789abcdef".getBytes();
         byte[] hexChars = new byte[bytes.length * 2];
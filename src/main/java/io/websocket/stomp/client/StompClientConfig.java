@@ -0,0 +1,900 @@
+package io.websocket.stomp.client;
+
+import io.websocket.stomp.client.codec.CborCodec;
+import io.websocket.stomp.client.codec.GsonCodec;
+import io.websocket.stomp.client.codec.MessageCodec;
+import net.jcip.annotations.Immutable;
+import org.springframework.util.MimeType;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * The configuration of a {@link StompClient}. Instances are built through a {@link Builder}.
+ */
+@Immutable
+public class StompClientConfig {
+
+    /**
+     * True if {@code subscribeAndSend} pipelines the requests of a topic, by tagging each request
+     * with a correlation id header that the server copies into its reply. Otherwise at most one request
+     * per topic is in flight at a time.
+     */
+    public final boolean pipelining;
+
+    /**
+     * The maximal number of pipelined requests per topic that can be waiting for their reply at the same time.
+     */
+    public final int maxInFlightPerTopic;
+
+    /**
+     * The maximal time a request that is not pipelined waits for its reply, in milliseconds. Its topic takes
+     * no other request meanwhile, even if the caller stopped waiting; after it, the request fails with
+     * a {@link java.util.concurrent.TimeoutException} and the next request of the topic is sent.
+     */
+    public final long serialReplyTimeoutMillis;
+
+    /**
+     * How the messages of the subscribed topics are handed to their handlers.
+     */
+    public final DispatchMode dispatchMode;
+
+    /**
+     * The executor where the handlers run in {@link DispatchMode#ORDERED} and {@link DispatchMode#VIRTUAL_THREADS} modes.
+     * If {@code null}, the handlers run on the executor of the runtime of the client: with its own runtime, a thread
+     * per dispatch lane, or a virtual thread per task, shut down when the client is closed.
+     */
+    public final Executor dispatchExecutor;
+
+    /**
+     * The number of dispatch lanes in {@link DispatchMode#ORDERED} mode. The messages of a topic
+     * always go through the same lane, where they are handled one at a time.
+     */
+    public final int dispatchLanes;
+
+    /**
+     * The maximal number of messages waiting in each dispatch lane.
+     */
+    public final int dispatchQueueCapacity;
+
+    /**
+     * What to do with a message whose dispatch lane is full.
+     */
+    public final DispatchRejectionPolicy dispatchRejectionPolicy;
+
+    /**
+     * The codecs of the payloads. The first one is the codec of the default content type, also used
+     * for the received messages without a known content type.
+     */
+    public final List<MessageCodec> codecs;
+
+    /**
+     * The content type of the messages sent to destinations without a specific content type.
+     */
+    public final MimeType defaultContentType;
+
+    /**
+     * The content types of the messages sent to specific destinations, per destination prefix.
+     */
+    public final Map<String, MimeType> contentTypes;
+
+    /**
+     * True if the outbound frames are coalesced into batches, written in as few websocket messages as possible.
+     * The server must accept more STOMP frames in the same websocket message, as Spring brokers do.
+     */
+    public final boolean batching;
+
+    /**
+     * The maximal time an outbound frame waits for others to join its batch, in milliseconds.
+     */
+    public final long batchLingerMillis;
+
+    /**
+     * The size of a batch that gets written without waiting any longer. It must not exceed the message
+     * size limit of the server.
+     */
+    public final int batchMaxBytes;
+
+    /**
+     * The number of frames of a batch that gets written without waiting any longer.
+     */
+    public final int batchMaxFrames;
+
+    /**
+     * The size of the buffers where each connection of the client assembles the inbound messages, in bytes.
+     * It bounds the size of the messages received in one piece.
+     */
+    public final int messageBufferBytes;
+
+    /**
+     * The size of the chunks of the payloads sent in many frames, in bytes: the payloads encoded in more bytes
+     * are split into chunks, that the receivers reassemble. If 0, payloads are always sent in one frame.
+     */
+    public final int chunkBytes;
+
+    /**
+     * The maximal memory held by a payload received in chunks, in bytes: its size, plus 64 bytes per chunk.
+     * The chunks of larger payloads are dropped.
+     */
+    public final int chunkedMessageMaxBytes;
+
+    /**
+     * The size of the encoded payloads above which they are compressed with deflate, in bytes, or -1 if no payload is.
+     * The compressed payloads received are decompressed whatever this threshold.
+     */
+    public final int compressionThresholdBytes;
+
+    /**
+     * The maximal number of last values of the subscribed destinations kept in memory, or 0 to keep none.
+     */
+    public final int lastValueCacheSize;
+
+    /**
+     * The time the last values are kept, in milliseconds, or 0 to keep them until they are evicted.
+     */
+    public final long lastValueCacheTtlMillis;
+
+    /**
+     * The time the responses of the idempotent requests of {@code subscribeAndSend} are cached, in milliseconds,
+     * per topic prefix. The responses of the other topics are not cached.
+     */
+    public final Map<String, Long> responseCacheTtls;
+
+    /**
+     * The maximal number of responses cached.
+     */
+    public final int responseCacheMaxEntries;
+
+    /**
+     * The maximal total size of the responses cached and of their requests, as encoded by the default codec.
+     */
+    public final long responseCacheMaxBytes;
+
+    /**
+     * The maximal time to wait for the server to acknowledge a subscription, in milliseconds.
+     */
+    public final long receiptTimeoutMillis;
+
+    /**
+     * The delay before the first attempt to reconnect after the loss of the connection, in milliseconds.
+     * It doubles at each further attempt.
+     */
+    public final long reconnectInitialDelayMillis;
+
+    /**
+     * The maximal delay between two attempts to reconnect, in milliseconds.
+     */
+    public final long reconnectMaxDelayMillis;
+
+    /**
+     * The maximal random fraction of the delay before an attempt to reconnect subtracted from it, between 0 and 1.
+     */
+    public final double reconnectJitter;
+
+    /**
+     * The number of attempts to reconnect before giving up and closing the client.
+     */
+    public final int reconnectMaxAttempts;
+
+    /**
+     * The maximal size of the messages kept in memory while disconnected, to be sent on reconnection, in bytes.
+     * If 0, the messages sent while disconnected fail.
+     */
+    public final long offlineBufferBytes;
+
+    /**
+     * What to do with a message sent while disconnected, when the offline buffer is full.
+     */
+    public final OfflineOverflowPolicy offlineOverflowPolicy;
+
+    /**
+     * The memory-mapped file where the offline messages spill when the memory is full, or {@code null} for none.
+     */
+    public final Path offlineSpillFile;
+
+    /**
+     * The size of the spill file of the offline messages, in bytes.
+     */
+    public final int offlineSpillBytes;
+
+    /**
+     * The interval of the heart-beats the client offers to send, in milliseconds, 0 for none.
+     */
+    public final long heartbeatSendMillis;
+
+    /**
+     * The interval of the heart-beats the client asks the server to send, in milliseconds, 0 for none.
+     */
+    public final long heartbeatReceiveMillis;
+
+    /**
+     * The number of consecutive heart-beat intervals without any message from the server after which
+     * the connection is considered dead and the client reconnects.
+     */
+    public final int heartbeatMissedLimit;
+
+    /**
+     * The destination of the messages sent periodically to measure the round trip to the server through
+     * their receipt, or {@code null} to not measure it.
+     */
+    public final String latencyProbeDestination;
+
+    /**
+     * The interval between two latency probes, in milliseconds.
+     */
+    public final long latencyProbeIntervalMillis;
+
+    /**
+     * The receiver of the measurements of the client.
+     */
+    public final MetricsRegistry metrics;
+
+    /**
+     * The messages are traced one in {@code traceSampleRate} on average, through the
+     * {@code io.websocket.stomp.client.trace} logger; 0 disables tracing.
+     */
+    public final int traceSampleRate;
+
+    private StompClientConfig(Builder builder) {
+        this.pipelining = builder.pipelining;
+        this.maxInFlightPerTopic = builder.maxInFlightPerTopic;
+        this.serialReplyTimeoutMillis = builder.serialReplyTimeoutMillis;
+        this.dispatchMode = builder.dispatchMode;
+        this.dispatchExecutor = builder.dispatchExecutor;
+        this.dispatchLanes = builder.dispatchLanes;
+        this.dispatchQueueCapacity = builder.dispatchQueueCapacity;
+        this.dispatchRejectionPolicy = builder.dispatchRejectionPolicy;
+        this.defaultContentType = builder.defaultContentType;
+        this.contentTypes = Collections.unmodifiableMap(new LinkedHashMap<>(builder.contentTypes));
+        this.batching = builder.batching;
+        this.batchLingerMillis = builder.batchLingerMillis;
+        this.batchMaxBytes = builder.batchMaxBytes;
+        this.batchMaxFrames = builder.batchMaxFrames;
+        this.messageBufferBytes = builder.messageBufferBytes;
+        this.chunkBytes = builder.chunkBytes;
+        this.chunkedMessageMaxBytes = builder.chunkedMessageMaxBytes;
+        this.compressionThresholdBytes = builder.compressionThresholdBytes;
+        this.lastValueCacheSize = builder.lastValueCacheSize;
+        this.lastValueCacheTtlMillis = builder.lastValueCacheTtlMillis;
+        this.responseCacheTtls = Collections.unmodifiableMap(new LinkedHashMap<>(builder.responseCacheTtls));
+        this.responseCacheMaxEntries = builder.responseCacheMaxEntries;
+        this.responseCacheMaxBytes = builder.responseCacheMaxBytes;
+        this.receiptTimeoutMillis = builder.receiptTimeoutMillis;
+        this.reconnectInitialDelayMillis = builder.reconnectInitialDelayMillis;
+        this.reconnectMaxDelayMillis = builder.reconnectMaxDelayMillis;
+        this.reconnectJitter = builder.reconnectJitter;
+        this.reconnectMaxAttempts = builder.reconnectMaxAttempts;
+        this.offlineBufferBytes = builder.offlineBufferBytes;
+        this.offlineOverflowPolicy = builder.offlineOverflowPolicy;
+        this.offlineSpillFile = builder.offlineSpillFile;
+        this.offlineSpillBytes = builder.offlineSpillBytes;
+        this.heartbeatSendMillis = builder.heartbeatSendMillis;
+        this.heartbeatReceiveMillis = builder.heartbeatReceiveMillis;
+        this.heartbeatMissedLimit = builder.heartbeatMissedLimit;
+        this.latencyProbeDestination = builder.latencyProbeDestination;
+        this.latencyProbeIntervalMillis = builder.latencyProbeIntervalMillis;
+        this.metrics = builder.metrics;
+        this.traceSampleRate = builder.traceSampleRate;
+
+        List<MessageCodec> codecs = new ArrayList<>(builder.codecs.values());
+        codecs.sort(Comparator.comparing(codec -> !codec.getContentType().equals(defaultContentType)));
+        this.codecs = Collections.unmodifiableList(codecs);
+    }
+
+    /**
+     * Yields the content type of the messages sent to the given destination: that of the longest
+     * destination prefix with a specific content type, or the default content type.
+     *
+     * @param destination the destination
+     * @return the content type
+     */
+    public MimeType contentTypeFor(String destination) {
+        MimeType contentType = defaultContentType;
+        int longestPrefix = -1;
+
+        for (Map.Entry<String, MimeType> entry: contentTypes.entrySet()) {
+            if (destination.startsWith(entry.getKey()) && entry.getKey().length() > longestPrefix) {
+                contentType = entry.getValue();
+                longestPrefix = entry.getKey().length();
+            }
+        }
+
+        return contentType;
+    }
+
+    /**
+     * Yields the time the responses of the requests to the given topic are cached: that of the longest
+     * topic prefix whose responses are cached, or 0 if they are not cached.
+     *
+     * @param topic the topic
+     * @return the time to live of the responses, in milliseconds, or 0
+     */
+    public long responseCacheTtlFor(String topic) {
+        long ttlMillis = 0;
+        int longestPrefix = -1;
+
+        for (Map.Entry<String, Long> entry: responseCacheTtls.entrySet()) {
+            if (topic.startsWith(entry.getKey()) && entry.getKey().length() > longestPrefix) {
+                ttlMillis = entry.getValue();
+                longestPrefix = entry.getKey().length();
+            }
+        }
+
+        return ttlMillis;
+    }
+
+    /**
+     * Yields the default configuration.
+     * @return the default configuration
+     */
+    public static StompClientConfig defaults() {
+        return builder().build();
+    }
+
+    /**
+     * Yields a builder of configurations, initialized with the default values.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A builder of {@link StompClientConfig}.
+     */
+    public static class Builder {
+        private boolean pipelining = false;
+        private int maxInFlightPerTopic = 64;
+        private long serialReplyTimeoutMillis = 30_000;
+        private DispatchMode dispatchMode = DispatchMode.ORDERED;
+        private Executor dispatchExecutor;
+        private int dispatchLanes = Runtime.getRuntime().availableProcessors();
+        private int dispatchQueueCapacity = 1024;
+        private DispatchRejectionPolicy dispatchRejectionPolicy = DispatchRejectionPolicy.BLOCK;
+        private final Map<MimeType, MessageCodec> codecs = new LinkedHashMap<>();
+        private MimeType defaultContentType = GsonCodec.CONTENT_TYPE;
+        private final Map<String, MimeType> contentTypes = new LinkedHashMap<>();
+        private boolean batching = false;
+        private long batchLingerMillis = 5;
+        private int batchMaxBytes = 32 * 1024;
+        private int batchMaxFrames = 256;
+        private int messageBufferBytes = 4 * 512 * 1024;
+        private int chunkBytes = 0;
+        private int chunkedMessageMaxBytes = 256 * 1024 * 1024;
+        private int compressionThresholdBytes = -1;
+        private int lastValueCacheSize = 0;
+        private long lastValueCacheTtlMillis = 0;
+        private final Map<String, Long> responseCacheTtls = new LinkedHashMap<>();
+        private int responseCacheMaxEntries = 10_000;
+        private long responseCacheMaxBytes = 16 * 1024 * 1024;
+        private long receiptTimeoutMillis = 15_000;
+        private long reconnectInitialDelayMillis = 100;
+        private long reconnectMaxDelayMillis = 30_000;
+        private double reconnectJitter = 0.5;
+        private int reconnectMaxAttempts = Integer.MAX_VALUE;
+        private long offlineBufferBytes = 0;
+        private OfflineOverflowPolicy offlineOverflowPolicy = OfflineOverflowPolicy.FAIL;
+        private Path offlineSpillFile;
+        private int offlineSpillBytes;
+        private long heartbeatSendMillis = 10_000;
+        private long heartbeatReceiveMillis = 10_000;
+        private int heartbeatMissedLimit = 2;
+        private String latencyProbeDestination;
+        private long latencyProbeIntervalMillis;
+        private MetricsRegistry metrics = MetricsRegistry.NOOP;
+        private int traceSampleRate = 0;
+
+        private Builder() {
+            codec(new GsonCodec());
+            codec(new CborCodec());
+        }
+
+        /**
+         * Enables or disables the pipelining of the requests of {@code subscribeAndSend}.
+         * The server must copy the {@code correlation-id} header of the request into its reply.
+         *
+         * @param pipelining true to enable pipelining
+         * @return this builder
+         */
+        public Builder pipelining(boolean pipelining) {
+            this.pipelining = pipelining;
+            return this;
+        }
+
+        /**
+         * Sets the maximal number of pipelined requests per topic waiting for their reply at the same time.
+         *
+         * @param maxInFlightPerTopic the maximal number of in-flight requests, at least 1
+         * @return this builder
+         */
+        public Builder maxInFlightPerTopic(int maxInFlightPerTopic) {
+            if (maxInFlightPerTopic < 1)
+                throw new IllegalArgumentException("maxInFlightPerTopic must be at least 1");
+
+            this.maxInFlightPerTopic = maxInFlightPerTopic;
+            return this;
+        }
+
+        /**
+         * Sets the maximal time a request that is not pipelined waits for its reply, holding its topic.
+         * It defaults to 30 seconds. A reply arriving later is taken for the reply of the next request
+         * of the topic, since nothing else tells them apart.
+         *
+         * @param serialReplyTimeoutMillis the time in milliseconds, at least 1
+         * @return this builder
+         */
+        public Builder serialReplyTimeoutMillis(long serialReplyTimeoutMillis) {
+            if (serialReplyTimeoutMillis < 1)
+                throw new IllegalArgumentException("serialReplyTimeoutMillis must be at least 1");
+
+            this.serialReplyTimeoutMillis = serialReplyTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Sets how the messages of the subscribed topics are handed to their handlers.
+         *
+         * @param dispatchMode the dispatch mode
+         * @return this builder
+         */
+        public Builder dispatchMode(DispatchMode dispatchMode) {
+            this.dispatchMode = dispatchMode;
+            return this;
+        }
+
+        /**
+         * Sets the executor where the handlers run in {@link DispatchMode#ORDERED} and {@link DispatchMode#VIRTUAL_THREADS} modes.
+         * The executor is not shut down when the client is closed.
+         *
+         * @param dispatchExecutor the executor
+         * @return this builder
+         */
+        public Builder dispatchExecutor(Executor dispatchExecutor) {
+            this.dispatchExecutor = dispatchExecutor;
+            return this;
+        }
+
+        /**
+         * Sets the number of dispatch lanes in {@link DispatchMode#ORDERED} mode.
+         *
+         * @param dispatchLanes the number of lanes, at least 1
+         * @return this builder
+         */
+        public Builder dispatchLanes(int dispatchLanes) {
+            if (dispatchLanes < 1)
+                throw new IllegalArgumentException("dispatchLanes must be at least 1");
+
+            this.dispatchLanes = dispatchLanes;
+            return this;
+        }
+
+        /**
+         * Sets the maximal number of messages waiting in each dispatch lane.
+         *
+         * @param dispatchQueueCapacity the capacity of each lane, at least 1
+         * @return this builder
+         */
+        public Builder dispatchQueueCapacity(int dispatchQueueCapacity) {
+            if (dispatchQueueCapacity < 1)
+                throw new IllegalArgumentException("dispatchQueueCapacity must be at least 1");
+
+            this.dispatchQueueCapacity = dispatchQueueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets what to do with a message whose dispatch lane is full. It defaults to
+         * {@link DispatchRejectionPolicy#BLOCK}, which keeps the order and the messages of the topics, but holds
+         * up the transport until the lane has room.
+         *
+         * @param dispatchRejectionPolicy the rejection policy
+         * @return this builder
+         */
+        public Builder dispatchRejectionPolicy(DispatchRejectionPolicy dispatchRejectionPolicy) {
+            this.dispatchRejectionPolicy = dispatchRejectionPolicy;
+            return this;
+        }
+
+        /**
+         * Registers a codec, replacing the codec with the same content type, if any.
+         * The JSON and CBOR codecs are registered by default.
+         *
+         * @param codec the codec
+         * @return this builder
+         */
+        public Builder codec(MessageCodec codec) {
+            this.codecs.put(codec.getContentType(), codec);
+            return this;
+        }
+
+        /**
+         * Sets the content type of the messages sent to destinations without a specific content type.
+         * It defaults to JSON.
+         *
+         * @param defaultContentType the content type, that must have a registered codec
+         * @return this builder
+         */
+        public Builder defaultContentType(MimeType defaultContentType) {
+            this.defaultContentType = defaultContentType;
+            return this;
+        }
+
+        /**
+         * Sets the content type of the messages sent to the destinations with the given prefix.
+         *
+         * @param destinationPrefix the prefix of the destinations, such as {@code /topic/prices}
+         * @param contentType the content type, that must have a registered codec
+         * @return this builder
+         */
+        public Builder contentType(String destinationPrefix, MimeType contentType) {
+            this.contentTypes.put(destinationPrefix, contentType);
+            return this;
+        }
+
+        /**
+         * Enables or disables the coalescing of the outbound frames into batches.
+         *
+         * @param batching true to enable batching
+         * @return this builder
+         */
+        public Builder batching(boolean batching) {
+            this.batching = batching;
+            return this;
+        }
+
+        /**
+         * Sets the maximal time an outbound frame waits for others to join its batch.
+         *
+         * @param batchLingerMillis the time in milliseconds, at least 0. With 0, the frames are only coalesced
+         *                          while the socket is busy writing the previous ones
+         * @return this builder
+         */
+        public Builder batchLingerMillis(long batchLingerMillis) {
+            if (batchLingerMillis < 0)
+                throw new IllegalArgumentException("batchLingerMillis must be at least 0");
+
+            this.batchLingerMillis = batchLingerMillis;
+            return this;
+        }
+
+        /**
+         * Sets the size of a batch that gets written without waiting any longer.
+         *
+         * @param batchMaxBytes the size in bytes, at least 1
+         * @return this builder
+         */
+        public Builder batchMaxBytes(int batchMaxBytes) {
+            if (batchMaxBytes < 1)
+                throw new IllegalArgumentException("batchMaxBytes must be at least 1");
+
+            this.batchMaxBytes = batchMaxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the number of frames of a batch that gets written without waiting any longer.
+         *
+         * @param batchMaxFrames the number of frames, at least 1
+         * @return this builder
+         */
+        public Builder batchMaxFrames(int batchMaxFrames) {
+            if (batchMaxFrames < 1)
+                throw new IllegalArgumentException("batchMaxFrames must be at least 1");
+
+            this.batchMaxFrames = batchMaxFrames;
+            return this;
+        }
+
+        /**
+         * Sets the size of the buffers where each connection assembles the inbound messages. It defaults to 2 MB;
+         * a smaller size reduces the footprint of each connection, and larger payloads can then be sent in chunks.
+         *
+         * @param messageBufferBytes the size in bytes, at least 1
+         * @return this builder
+         */
+        public Builder messageBufferBytes(int messageBufferBytes) {
+            if (messageBufferBytes < 1)
+                throw new IllegalArgumentException("messageBufferBytes must be at least 1");
+
+            this.messageBufferBytes = messageBufferBytes;
+            return this;
+        }
+
+        /**
+         * Enables the sending of the large payloads in chunks: the payloads encoded in more than {@code chunkBytes}
+         * bytes are split into frames of at most {@code chunkBytes} bytes, with the same destination and headers,
+         * and reassembled by the receiver, which must be a client of this library. It is disabled by default.
+         *
+         * @param chunkBytes the size of the chunks in bytes, at least 1. It must not exceed the message size limit of the server
+         * @return this builder
+         */
+        public Builder chunkBytes(int chunkBytes) {
+            if (chunkBytes < 1)
+                throw new IllegalArgumentException("chunkBytes must be at least 1");
+
+            this.chunkBytes = chunkBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximal size of a payload received in chunks. Each chunk is charged 64 more bytes, for the memory
+         * it holds beyond its bytes. It defaults to 256 MB.
+         *
+         * @param chunkedMessageMaxBytes the size in bytes, at least 1
+         * @return this builder
+         */
+        public Builder chunkedMessageMaxBytes(int chunkedMessageMaxBytes) {
+            if (chunkedMessageMaxBytes < 1)
+                throw new IllegalArgumentException("chunkedMessageMaxBytes must be at least 1");
+
+            this.chunkedMessageMaxBytes = chunkedMessageMaxBytes;
+            return this;
+        }
+
+        /**
+         * Enables the compression of the payloads encoded in more than {@code compressionThresholdBytes} bytes,
+         * with deflate. The compressed payloads carry a {@code content-encoding: deflate} header, and the receiver
+         * must be a client of this library. It is disabled by default.
+         *
+         * @param compressionThresholdBytes the size in bytes, at least 0
+         * @return this builder
+         */
+        public Builder compressionThresholdBytes(int compressionThresholdBytes) {
+            if (compressionThresholdBytes < 0)
+                throw new IllegalArgumentException("compressionThresholdBytes must be at least 0");
+
+            this.compressionThresholdBytes = compressionThresholdBytes;
+            return this;
+        }
+
+        /**
+         * Enables the cache of the last values received from the subscribed destinations, per destination
+         * or per key within a destination. A handler subscribing to a destination is first handed its
+         * cached values, and the values can be looked up without a round trip to the server.
+         * The least recently used value is evicted when the cache is full. It is disabled by default.
+         *
+         * @param lastValueCacheSize the maximal number of values, at least 1
+         * @param lastValueCacheTtlMillis the time a value is kept, in milliseconds, or 0 to keep it until it is evicted
+         * @return this builder
+         */
+        public Builder lastValueCache(int lastValueCacheSize, long lastValueCacheTtlMillis) {
+            if (lastValueCacheSize < 1)
+                throw new IllegalArgumentException("lastValueCacheSize must be at least 1");
+            if (lastValueCacheTtlMillis < 0)
+                throw new IllegalArgumentException("lastValueCacheTtlMillis must be at least 0");
+
+            this.lastValueCacheSize = lastValueCacheSize;
+            this.lastValueCacheTtlMillis = lastValueCacheTtlMillis;
+            return this;
+        }
+
+        /**
+         * Caches the responses of the requests of {@code subscribeAndSend} to the topics with the given prefix,
+         * per request payload, for the given time. The concurrent identical requests to these topics share
+         * the same request in flight. The requests to these topics must be idempotent, and their responses
+         * must not be modified by their callers.
+         *
+         * @param topicPrefix the prefix of the topics, such as {@code /reference}
+         * @param ttlMillis the time a response is kept, in milliseconds, at least 1; {@link Long#MAX_VALUE}
+         *                  keeps the responses until they are evicted
+         * @return this builder
+         */
+        public Builder cacheResponses(String topicPrefix, long ttlMillis) {
+            if (ttlMillis < 1)
+                throw new IllegalArgumentException("ttlMillis must be at least 1");
+
+            this.responseCacheTtls.put(topicPrefix, ttlMillis);
+            return this;
+        }
+
+        /**
+         * Sets the bounds of the cache of the responses, whose least recently used responses are evicted
+         * beyond them. They default to 10 000 responses and 16 MB.
+         *
+         * @param responseCacheMaxEntries the maximal number of responses, at least 1
+         * @param responseCacheMaxBytes the maximal total size of the responses and of their requests, at least 1
+         * @return this builder
+         */
+        public Builder responseCacheLimits(int responseCacheMaxEntries, long responseCacheMaxBytes) {
+            if (responseCacheMaxEntries < 1)
+                throw new IllegalArgumentException("responseCacheMaxEntries must be at least 1");
+            if (responseCacheMaxBytes < 1)
+                throw new IllegalArgumentException("responseCacheMaxBytes must be at least 1");
+
+            this.responseCacheMaxEntries = responseCacheMaxEntries;
+            this.responseCacheMaxBytes = responseCacheMaxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximal time to wait for the server to acknowledge a subscription.
+         *
+         * @param receiptTimeoutMillis the time in milliseconds, at least 1
+         * @return this builder
+         */
+        public Builder receiptTimeoutMillis(long receiptTimeoutMillis) {
+            if (receiptTimeoutMillis < 1)
+                throw new IllegalArgumentException("receiptTimeoutMillis must be at least 1");
+
+            this.receiptTimeoutMillis = receiptTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Sets the delays between the attempts to reconnect after the loss of the connection.
+         * The delay starts from the initial delay and doubles at each attempt, up to the maximal delay.
+         *
+         * @param reconnectInitialDelayMillis the delay before the first attempt, in milliseconds, at least 0
+         * @param reconnectMaxDelayMillis the maximal delay, in milliseconds, at least the initial delay
+         * @return this builder
+         */
+        public Builder reconnectDelays(long reconnectInitialDelayMillis, long reconnectMaxDelayMillis) {
+            if (reconnectInitialDelayMillis < 0)
+                throw new IllegalArgumentException("reconnectInitialDelayMillis must be at least 0");
+            if (reconnectMaxDelayMillis < reconnectInitialDelayMillis)
+                throw new IllegalArgumentException("reconnectMaxDelayMillis must be at least reconnectInitialDelayMillis");
+
+            this.reconnectInitialDelayMillis = reconnectInitialDelayMillis;
+            this.reconnectMaxDelayMillis = reconnectMaxDelayMillis;
+            return this;
+        }
+
+        /**
+         * Sets the maximal random fraction of the delay before an attempt to reconnect subtracted from it.
+         *
+         * @param reconnectJitter the fraction, between 0 and 1
+         * @return this builder
+         */
+        public Builder reconnectJitter(double reconnectJitter) {
+            if (reconnectJitter < 0 || reconnectJitter > 1)
+                throw new IllegalArgumentException("reconnectJitter must be between 0 and 1");
+
+            this.reconnectJitter = reconnectJitter;
+            return this;
+        }
+
+        /**
+         * Sets the number of attempts to reconnect before giving up and closing the client. It is unlimited by default.
+         *
+         * @param reconnectMaxAttempts the number of attempts, at least 1
+         * @return this builder
+         */
+        public Builder reconnectMaxAttempts(int reconnectMaxAttempts) {
+            if (reconnectMaxAttempts < 1)
+                throw new IllegalArgumentException("reconnectMaxAttempts must be at least 1");
+
+            this.reconnectMaxAttempts = reconnectMaxAttempts;
+            return this;
+        }
+
+        /**
+         * Enables the buffering of the messages sent while disconnected, which are sent in order on reconnection.
+         * The requests of {@code subscribeAndSend} are never buffered, since their replies would be lost.
+         *
+         * @param offlineBufferBytes the maximal size of the messages kept in memory, in bytes, at least 0; 0 disables buffering
+         * @param offlineOverflowPolicy what to do with a new message when the buffer is full
+         * @return this builder
+         */
+        public Builder offlineBuffer(long offlineBufferBytes, OfflineOverflowPolicy offlineOverflowPolicy) {
+            if (offlineBufferBytes < 0)
+                throw new IllegalArgumentException("offlineBufferBytes must be at least 0");
+
+            this.offlineBufferBytes = offlineBufferBytes;
+            this.offlineOverflowPolicy = offlineOverflowPolicy;
+            return this;
+        }
+
+        /**
+         * Lets the offline messages spill to a memory-mapped file when the memory is full. The file is
+         * scratch space, overwritten when the client starts and deleted when it is closed.
+         *
+         * @param offlineSpillFile the file
+         * @param offlineSpillBytes the size of the file, in bytes, at least 1
+         * @return this builder
+         */
+        public Builder offlineSpill(Path offlineSpillFile, int offlineSpillBytes) {
+            if (offlineSpillBytes < 1)
+                throw new IllegalArgumentException("offlineSpillBytes must be at least 1");
+
+            this.offlineSpillFile = offlineSpillFile;
+            this.offlineSpillBytes = offlineSpillBytes;
+            return this;
+        }
+
+        /**
+         * Sets the heart-beats negotiated with the server. Both default to 10 seconds.
+         *
+         * @param heartbeatSendMillis the interval of the heart-beats the client offers to send, in milliseconds, 0 for none
+         * @param heartbeatReceiveMillis the interval of the heart-beats the client asks the server to send, in milliseconds, 0 for none
+         * @return this builder
+         */
+        public Builder heartbeat(long heartbeatSendMillis, long heartbeatReceiveMillis) {
+            if (heartbeatSendMillis < 0 || heartbeatReceiveMillis < 0)
+                throw new IllegalArgumentException("The heart-beat intervals must be at least 0");
+
+            this.heartbeatSendMillis = heartbeatSendMillis;
+            this.heartbeatReceiveMillis = heartbeatReceiveMillis;
+            return this;
+        }
+
+        /**
+         * Sets the number of consecutive heart-beat intervals without any message from the server after which
+         * the connection is considered dead and the client reconnects.
+         *
+         * @param heartbeatMissedLimit the number of intervals, at least 1
+         * @return this builder
+         */
+        public Builder heartbeatMissedLimit(int heartbeatMissedLimit) {
+            if (heartbeatMissedLimit < 1)
+                throw new IllegalArgumentException("heartbeatMissedLimit must be at least 1");
+
+            this.heartbeatMissedLimit = heartbeatMissedLimit;
+            return this;
+        }
+
+        /**
+         * Enables the measurement of the round trip to the server, through an empty message sent periodically
+         * with a receipt. The server must send receipts and ignore the messages of the destination.
+         *
+         * @param latencyProbeDestination the destination of the probes
+         * @param latencyProbeIntervalMillis the interval between two probes, in milliseconds, at least 1
+         * @return this builder
+         */
+        public Builder latencyProbe(String latencyProbeDestination, long latencyProbeIntervalMillis) {
+            if (latencyProbeIntervalMillis < 1)
+                throw new IllegalArgumentException("latencyProbeIntervalMillis must be at least 1");
+
+            this.latencyProbeDestination = latencyProbeDestination;
+            this.latencyProbeIntervalMillis = latencyProbeIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Sets the receiver of the measurements of the client. By default, they are ignored.
+         *
+         * @param metrics the receiver
+         * @return this builder
+         */
+        public Builder metrics(MetricsRegistry metrics) {
+            this.metrics = Objects.requireNonNull(metrics, "metrics");
+            return this;
+        }
+
+        /**
+         * Enables the tracing of a sample of the messages sent, received and of the requests, with their destination,
+         * size, latency and session, through the {@code io.websocket.stomp.client.trace} logger at INFO level.
+         * It is disabled by default.
+         *
+         * @param traceSampleRate the messages are traced one in {@code traceSampleRate} on average, at least 0;
+         *                        1 traces all messages and 0 disables tracing
+         * @return this builder
+         */
+        public Builder traceSampleRate(int traceSampleRate) {
+            if (traceSampleRate < 0)
+                throw new IllegalArgumentException("traceSampleRate must be at least 0");
+
+            this.traceSampleRate = traceSampleRate;
+            return this;
+        }
+
+        /**
+         * Builds the configuration.
+         * @return the configuration
+         * @throws IllegalArgumentException if a content type has no registered codec
+         */
+        public StompClientConfig build() {
+            if (!codecs.containsKey(defaultContentType))
+                throw new IllegalArgumentException("No codec for content type " + defaultContentType);
+
+            for (MimeType contentType: contentTypes.values())
+                if (!codecs.containsKey(contentType))
+                    throw new IllegalArgumentException("No codec for content type " + contentType);
+
+            if (offlineSpillFile != null && offlineBufferBytes == 0)
+                throw new IllegalArgumentException("The offline spill file requires an offline buffer");
+
+            return new StompClientConfig(this);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package io.websocket.stomp.client;
+
+import io.websocket.stomp.client.exceptions.NetworkExceptionResponse;
+import io.websocket.stomp.client.models.ErrorModel;
+import net.jcip.annotations.ThreadSafe;
+import org.reactivestreams.Publisher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * A thread safe pool of webSocket clients connected to the same end-point, each with its own STOMP session.
+ * Sends and requests are sharded across the sessions, so that they do not compete for a single connection.
+ * Subscriptions to a topic always go through the same session, chosen by the hash of the topic.
+ */
+@ThreadSafe
+public class StompClientPool implements AutoCloseable {
+
+    /**
+     * The clients of the pool, one per session.
+     */
+    private final List<StompClient> clients;
+
+    /**
+     * How the session of the messages is chosen.
+     */
+    private final ShardingStrategy shardingStrategy;
+
+    /**
+     * The counter used for the round-robin choice of the session.
+     */
+    private final AtomicInteger nextClient = new AtomicInteger();
+
+    /**
+     * Creates a pool of clients connected to a websockets end-point.
+     *
+     * @param url the websockets end-point
+     * @param size the number of sessions
+     * @param shardingStrategy how the session of the messages is chosen
+     * @param config the configuration of each client of the pool
+     * @throws ExecutionException if the computation threw an exception
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public StompClientPool(String url, int size, ShardingStrategy shardingStrategy, StompClientConfig config) throws ExecutionException, InterruptedException {
+        this(size, shardingStrategy, () -> new StompClient(url, config));
+    }
+
+    /**
+     * Creates a pool of clients connected to a websockets end-point, that share the transport resources of a runtime.
+     * Closing the pool does not close the runtime.
+     *
+     * @param url the websockets end-point
+     * @param size the number of sessions
+     * @param shardingStrategy how the session of the messages is chosen
+     * @param config the configuration of each client of the pool
+     * @param runtime the runtime of the clients
+     * @throws ExecutionException if the computation threw an exception
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public StompClientPool(String url, int size, ShardingStrategy shardingStrategy, StompClientConfig config, StompClientRuntime runtime) throws ExecutionException, InterruptedException {
+        this(size, shardingStrategy, () -> runtime.newClient(url, config));
+    }
+
+    private StompClientPool(int size, ShardingStrategy shardingStrategy, ClientFactory clientFactory) throws ExecutionException, InterruptedException {
+        if (size < 1)
+            throw new IllegalArgumentException("size must be at least 1");
+
+        this.shardingStrategy = shardingStrategy;
+
+        List<StompClient> clients = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++)
+                clients.add(clientFactory.create());
+        }
+        catch (ExecutionException | InterruptedException | RuntimeException e) {
+            clients.forEach(StompClient::close);
+            throw e;
+        }
+
+        this.clients = Collections.unmodifiableList(clients);
+    }
+
+    /**
+     * Creates a pool of clients connected to a websockets end-point, with the default configuration.
+     *
+     * @param url the websockets end-point
+     * @param size the number of sessions
+     * @param shardingStrategy how the session of the messages is chosen
+     * @throws ExecutionException if the computation threw an exception
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public StompClientPool(String url, int size, ShardingStrategy shardingStrategy) throws ExecutionException, InterruptedException {
+        this(url, size, shardingStrategy, StompClientConfig.defaults());
+    }
+
+    /**
+     * Yields the clients of this pool, one per session.
+     * @return the clients
+     */
+    public List<StompClient> getClients() {
+        return clients;
+    }
+
+    /**
+     * Sends an optional payload to a destination, through the session chosen by the sharding strategy.
+     * @param destination the destination
+     * @param payload the payload
+     */
+    public void send(String destination, Optional<Object> payload) {
+        clientFor(destination).send(destination, payload);
+    }
+
+    /**
+     * Subscribes and sends a request for the given topic, through the session chosen by the sharding strategy.
+     * See {@link StompClient#subscribeAndSend(String, Class, Optional)}.
+     *
+     * @param topic the topic
+     * @param resultTypeClass the result class type
+     * @param payload the payload, if any
+     * @return the result of the request
+     * @throws NetworkExceptionResponse if the server returned an error
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public <T> T subscribeAndSend(String topic, Class<T> resultTypeClass, Optional<Object> payload) throws InterruptedException {
+        return clientFor(topic).subscribeAndSend(topic, resultTypeClass, payload);
+    }
+
+    /**
+     * Subscribes and sends a request for the given topic, through the session chosen by the sharding strategy.
+     * See {@link StompClient#subscribeAndSendAsync(String, Class, Optional)}.
+     *
+     * @param topic the topic
+     * @param resultTypeClass the result class type
+     * @param payload the payload, if any
+     * @return the future result of the request
+     */
+    public <T> CompletableFuture<T> subscribeAndSendAsync(String topic, Class<T> resultTypeClass, Optional<Object> payload) {
+        return clientFor(topic).subscribeAndSendAsync(topic, resultTypeClass, payload);
+    }
+
+    /**
+     * Subscribes and sends a request for the given topic, through the session chosen by the sharding strategy.
+     * See {@link StompClient#subscribeAndSendAsync(String, Class, Optional, long, TimeUnit)}.
+     *
+     * @param topic the topic
+     * @param resultTypeClass the result class type
+     * @param payload the payload, if any
+     * @param timeout the maximal time to wait for the reply
+     * @param unit the time unit of {@code timeout}
+     * @return the future result of the request
+     */
+    public <T> CompletableFuture<T> subscribeAndSendAsync(String topic, Class<T> resultTypeClass, Optional<Object> payload, long timeout, TimeUnit unit) {
+        return clientFor(topic).subscribeAndSendAsync(topic, resultTypeClass, payload, timeout, unit);
+    }
+
+    /**
+     * Subscribes to a topic, through the session chosen by the hash of the topic, and then handles
+     * the result published by the topic. See {@link StompClient#subscribeToTopic(String, Class, BiConsumer)}.
+     *
+     * @param topic the topic destination
+     * @param resultTypeClass the result type class
+     * @param handler the handler of the result
+     * @param <T> the result type class
+     */
+    public <T> void subscribeToTopic(String topic, Class<T> resultTypeClass, BiConsumer<T, ErrorModel> handler) {
+        clientForTopic(topic).subscribeToTopic(topic, resultTypeClass, handler);
+    }
+
+    /**
+     * Subscribes to a topic without blocking the caller, through the session chosen by the hash of the topic.
+     * See {@link StompClient#subscribeToTopicAsync(String, Class, BiConsumer)}.
+     *
+     * @param topic the topic destination
+     * @param resultTypeClass the result type class
+     * @param handler the handler of the result
+     * @param <T> the result type class
+     * @return the future completed when the server acknowledges the subscription
+     */
+    public <T> CompletableFuture<Void> subscribeToTopicAsync(String topic, Class<T> resultTypeClass, BiConsumer<T, ErrorModel> handler) {
+        return clientForTopic(topic).subscribeToTopicAsync(topic, resultTypeClass, handler);
+    }
+
+    /**
+     * Removes a handler of a topic, from the session chosen by the hash of the topic.
+     * See {@link StompClient#removeTopicHandler(String, BiConsumer)}.
+     *
+     * @param topic the topic destination
+     * @param handler the handler of the result
+     * @return true if the handler was removed
+     */
+    public boolean removeTopicHandler(String topic, BiConsumer<?, ErrorModel> handler) {
+        return clientForTopic(topic).removeTopicHandler(topic, handler);
+    }
+
+    /**
+     * Subscribes to some topics at once, each through the session chosen by its hash.
+     * See {@link StompClient#subscribeToTopicsAsync(Collection, Class, BiConsumer)}.
+     *
+     * @param topics the topic destinations
+     * @param resultTypeClass the result type class
+     * @param handler the handler of the results of all topics
+     * @param <T> the result type class
+     * @return the future completed when the server has acknowledged all subscriptions
+     */
+    public <T> CompletableFuture<Void> subscribeToTopicsAsync(Collection<String> topics, Class<T> resultTypeClass, BiConsumer<T, ErrorModel> handler) {
+        return CompletableFuture.allOf(topics.stream()
+                .map(topic -> subscribeToTopicAsync(topic, resultTypeClass, handler))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Subscribes to a topic, through the session chosen by the hash of the topic, and yields a publisher
+     * of its messages. See {@link StompClient#topicPublisher(String, Class, int, OverflowStrategy)}.
+     *
+     * @param topic the topic destination
+     * @param resultTypeClass the result type class
+     * @param bufferSize the maximal number of messages buffered per subscriber
+     * @param overflowStrategy what to do with a new message when the buffer of a subscriber is full
+     * @param <T> the result type class
+     * @return the publisher of the messages of the topic
+     */
+    public <T> Publisher<T> topicPublisher(String topic, Class<T> resultTypeClass, int bufferSize, OverflowStrategy overflowStrategy) {
+        return clientForTopic(topic).topicPublisher(topic, resultTypeClass, bufferSize, overflowStrategy);
+    }
+
+    /**
+     * Writes the outbound frames waiting to join a batch now, in all sessions.
+     */
+    public void flush() {
+        clients.forEach(StompClient::flush);
+    }
+
+    @Override
+    public void close() {
+        clients.forEach(StompClient::close);
+    }
+
+    private StompClient clientFor(String destination) {
+        if (shardingStrategy == ShardingStrategy.ROUND_ROBIN)
+            return clients.get(Math.floorMod(nextClient.getAndIncrement(), clients.size()));
+        else
+            return clientForTopic(destination);
+    }
+
+    private StompClient clientForTopic(String topic) {
+        return clients.get(Math.floorMod(topic.hashCode(), clients.size()));
+    }
+
+    private interface ClientFactory {
+        StompClient create() throws ExecutionException, InterruptedException;
+    }
+}
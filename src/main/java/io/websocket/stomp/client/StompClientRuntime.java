@@ -0,0 +1,208 @@
+package io.websocket.stomp.client;
+
+import io.websocket.stomp.client.internal.VirtualThreads;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.tomcat.websocket.WsWebSocketContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The transport resources of the clients: the websocket container, the scheduler of their tasks
+ * and the executor of the handlers of their topics. A runtime can be shared by many clients, created with
+ * {@link #newClient(String, StompClientConfig)}, so that their footprint does not grow with their number.
+ * Closing the runtime closes its clients.
+ * <p>
+ * A client created with its own constructor gets a runtime of its own, closed with the client.
+ */
+@ThreadSafe
+public class StompClientRuntime implements AutoCloseable {
+    /**
+     * The container of the websocket sessions of the clients.
+     */
+    private final WsWebSocketContainer container;
+
+    /**
+     * The scheduler of the tasks of the clients, such as the timeouts of the requests and the heartbeats.
+     */
+    private final ThreadPoolTaskScheduler taskScheduler;
+
+    /**
+     * The number of threads of the dispatch executor.
+     */
+    private final int dispatchThreads;
+
+    /**
+     * The executor of the handlers of the topics, created when first needed.
+     */
+    private final AtomicReference<ExecutorService> dispatchExecutor = new AtomicReference<>();
+
+    /**
+     * The executor of the handlers of the topics in {@link DispatchMode#VIRTUAL_THREADS} mode, created when first needed.
+     */
+    private final AtomicReference<ExecutorService> virtualThreadExecutor = new AtomicReference<>();
+
+    /**
+     * The clients open with this runtime.
+     */
+    private final Set<StompClient> clients = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Creates a runtime with a scheduler thread and a dispatch thread per processor.
+     */
+    public StompClientRuntime() {
+        this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a runtime.
+     *
+     * @param schedulerThreads the number of threads of the scheduler of the tasks of the clients
+     * @param dispatchThreads the number of threads running the handlers of the topics, in {@link DispatchMode#ORDERED} mode
+     */
+    public StompClientRuntime(int schedulerThreads, int dispatchThreads) {
+        if (schedulerThreads < 1)
+            throw new IllegalArgumentException("schedulerThreads must be at least 1");
+        if (dispatchThreads < 1)
+            throw new IllegalArgumentException("dispatchThreads must be at least 1");
+
+        this.dispatchThreads = dispatchThreads;
+
+        // the buffers of each session are sized by its client, see StompClientConfig.messageBufferBytes
+        this.container = new WsWebSocketContainer();
+
+        this.taskScheduler = new ThreadPoolTaskScheduler();
+        this.taskScheduler.setPoolSize(schedulerThreads);
+        this.taskScheduler.setThreadNamePrefix("stomp-scheduler-");
+        this.taskScheduler.initialize();
+    }
+
+    /**
+     * Creates a client that uses this runtime, with the default configuration.
+     *
+     * @param url the websockets end-point
+     * @return the connected client
+     * @throws ExecutionException if the computation threw an exception
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public StompClient newClient(String url) throws ExecutionException, InterruptedException {
+        return newClient(url, StompClientConfig.defaults());
+    }
+
+    /**
+     * Creates a client that uses this runtime.
+     *
+     * @param url the websockets end-point
+     * @param config the configuration of the client
+     * @return the connected client
+     * @throws ExecutionException if the computation threw an exception
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public StompClient newClient(String url, StompClientConfig config) throws ExecutionException, InterruptedException {
+        return new StompClient(url, config, this, false);
+    }
+
+    /**
+     * Yields the number of clients open with this runtime.
+     *
+     * @return the number of clients
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    WsWebSocketContainer container() {
+        return container;
+    }
+
+    ThreadPoolTaskScheduler taskScheduler() {
+        return taskScheduler;
+    }
+
+    Executor dispatchExecutor() {
+        ExecutorService executor = dispatchExecutor.get();
+        if (executor != null)
+            return executor;
+
+        ExecutorService created = Executors.newFixedThreadPool(dispatchThreads, daemonThreadFactory("stomp-dispatch-"));
+        if (dispatchExecutor.compareAndSet(null, created))
+            return created;
+
+        created.shutdown();
+        return dispatchExecutor.get();
+    }
+
+    /**
+     * Yields the executor that starts a virtual thread per task.
+     *
+     * @return the executor, or {@code null} if this JVM has no virtual threads
+     */
+    Executor virtualThreadExecutor() {
+        ExecutorService executor = virtualThreadExecutor.get();
+        if (executor != null)
+            return executor;
+
+        ExecutorService created = VirtualThreads.newThreadPerTaskExecutor("stomp-handler-");
+        if (created == null || virtualThreadExecutor.compareAndSet(null, created))
+            return created;
+
+        created.shutdown();
+        return virtualThreadExecutor.get();
+    }
+
+    void register(StompClient client) {
+        if (closed.get())
+            throw new IllegalStateException("The runtime is closed");
+
+        clients.add(client);
+    }
+
+    void unregister(StompClient client) {
+        clients.remove(client);
+    }
+
+    /**
+     * Closes the clients of this runtime and releases its threads.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true))
+            return;
+
+        new ArrayList<>(clients).forEach(StompClient::close);
+
+        taskScheduler.shutdown();
+
+        ExecutorService executor = dispatchExecutor.get();
+        if (executor != null)
+            executor.shutdown();
+
+        executor = virtualThreadExecutor.get();
+        if (executor != null)
+            executor.shutdown();
+
+        container.destroy();
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package io.websocket.stomp.client.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.util.MimeType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compact binary codec, that encodes payloads in CBOR (RFC 7049). Objects are mapped to CBOR
+ * exactly as the GSON library maps them to JSON. The content type is {@code application/octet-stream;codec=cbor},
+ * since Spring STOMP transports send binary websocket frames only for content types compatible
+ * with {@code application/octet-stream}.
+ */
+@ThreadSafe
+public class CborCodec implements MessageCodec {
+    public final static MimeType CONTENT_TYPE = new MimeType("application", "octet-stream", Collections.singletonMap("codec", "cbor"));
+    private final static int NULL = 0xf6;
+    private final Gson gson;
+
+    /**
+     * The type adapters used so far, per target type.
+     */
+    private final ConcurrentHashMap<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
+
+    public CborCodec() {
+        this(new GsonBuilder().create());
+    }
+
+    public CborCodec(Gson gson) {
+        this.gson = gson.newBuilder().registerTypeAdapterFactory(MAPS_THROUGH_TREE).create();
+    }
+
+    @Override
+    public MimeType getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(Object payload) {
+        if (payload == null)
+            return new byte[] { (byte) NULL };
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        gson.toJson(payload, payload.getClass(), new CborWriter(out));
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] payload, Type type) throws IOException {
+        if (payload.length == 0 || (payload.length == 1 && (payload[0] & 0xff) == NULL))
+            return null;
+
+        CborReader reader = new CborReader(payload, 0, payload.length);
+        Object result = adapters.computeIfAbsent(type, _type -> gson.getAdapter(TypeToken.get(_type))).read(reader);
+        if (reader.peek() != JsonToken.END_DOCUMENT)
+            throw new JsonIOException("CBOR document was not fully consumed.");
+
+        return result;
+    }
+
+    /**
+     * The GSON adapters of maps require the internals of the JSON reader. Hence maps are first read
+     * into a tree, which is then converted into the map.
+     */
+    private final static TypeAdapterFactory MAPS_THROUGH_TREE = new TypeAdapterFactory() {
+
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (!Map.class.isAssignableFrom(type.getRawType()))
+                return null;
+
+            TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+            TypeAdapter<JsonElement> tree = gson.getAdapter(JsonElement.class);
+
+            return new TypeAdapter<T>() {
+
+                @Override
+                public void write(JsonWriter out, T value) throws IOException {
+                    delegate.write(out, value);
+                }
+
+                @Override
+                public T read(JsonReader in) throws IOException {
+                    return delegate.fromJsonTree(tree.read(in));
+                }
+            };
+        }
+    };
+}
@@ -0,0 +1,466 @@
+package io.websocket.stomp.client.codec;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A reader of CBOR (RFC 7049) documents, that drives the GSON type adapters as if it were a JSON reader.
+ * It supports the data items that have a JSON equivalent: numbers, text strings, arrays and maps with text keys,
+ * booleans and {@code null}. Tags are ignored.
+ */
+class CborReader extends JsonReader {
+    private final static Reader UNUSED = new Reader() {
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            return -1;
+        }
+
+        @Override
+        public void close() {}
+    };
+
+    private final static int ARRAY = 0;
+    private final static int OBJECT = 1;
+
+    private final byte[] in;
+    private final int end;
+    private int pos;
+
+    /**
+     * The stack of the arrays and objects being read.
+     */
+    private int[] kinds = new int[8];
+
+    /**
+     * The number of items still to read in each array and object of the stack, or -1 if their length is indefinite.
+     * For objects, the number of members.
+     */
+    private long[] remaining = new long[8];
+
+    /**
+     * True for each object of the stack whose next item is the name of a member.
+     */
+    private boolean[] nameNext = new boolean[8];
+
+    private int depth;
+
+    /**
+     * The kind of the next item, if already computed.
+     */
+    private JsonToken peeked;
+
+    CborReader(byte[] in, int start, int end) {
+        super(UNUSED);
+        this.in = in;
+        this.pos = start;
+        this.end = end;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        if (peeked == null)
+            peeked = doPeek();
+
+        return peeked;
+    }
+
+    private JsonToken doPeek() throws IOException {
+        if (depth > 0) {
+            int top = depth - 1;
+            boolean atEnd = remaining[top] == 0 || (remaining[top] < 0 && byteAt(pos) == (byte) 0xff);
+            if (atEnd)
+                return kinds[top] == ARRAY ? JsonToken.END_ARRAY : JsonToken.END_OBJECT;
+        }
+        else if (pos >= end)
+            return JsonToken.END_DOCUMENT;
+
+        skipTags();
+        int initial = byteAt(pos) & 0xff;
+        int majorType = initial >>> 5;
+
+        if (depth > 0 && kinds[depth - 1] == OBJECT && nameNext[depth - 1]) {
+            if (majorType != 3)
+                throw syntaxError("Expected a text key");
+
+            return JsonToken.NAME;
+        }
+
+        switch (majorType) {
+            case 0:
+            case 1:
+                return JsonToken.NUMBER;
+            case 3:
+                return JsonToken.STRING;
+            case 4:
+                return JsonToken.BEGIN_ARRAY;
+            case 5:
+                return JsonToken.BEGIN_OBJECT;
+            case 7:
+                switch (initial & 0x1f) {
+                    case 20:
+                    case 21:
+                        return JsonToken.BOOLEAN;
+                    case 22:
+                    case 23:
+                        return JsonToken.NULL;
+                    case 25:
+                    case 26:
+                    case 27:
+                        return JsonToken.NUMBER;
+                }
+        }
+
+        throw syntaxError("Unsupported data item 0x" + Integer.toHexString(initial));
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        push(ARRAY, readLength());
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        pop();
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        push(OBJECT, readLength());
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        pop();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_ARRAY && token != JsonToken.END_OBJECT && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        String name = readText();
+        nameNext[depth - 1] = false;
+        peeked = null;
+        return name;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        if (token == JsonToken.STRING) {
+            String value = readText();
+            valueConsumed();
+            return value;
+        }
+        else if (token == JsonToken.NUMBER)
+            return readNumber().toString();
+        else
+            throw syntaxError("Expected a string but was " + token);
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        boolean value = (in[pos++] & 0x1f) == 21;
+        valueConsumed();
+        return value;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+        pos++;
+        valueConsumed();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        JsonToken token = peek();
+        if (token == JsonToken.STRING)
+            return Double.parseDouble(nextString());
+        else if (token == JsonToken.NUMBER)
+            return readNumber().doubleValue();
+        else
+            throw syntaxError("Expected a double but was " + token);
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        JsonToken token = peek();
+        if (token == JsonToken.STRING)
+            return Long.parseLong(nextString());
+        else if (token != JsonToken.NUMBER)
+            throw syntaxError("Expected a long but was " + token);
+
+        Number value = readNumber();
+        if (value instanceof Long)
+            return value.longValue();
+
+        try {
+            return new BigDecimal(value.toString()).longValueExact();
+        }
+        catch (ArithmeticException e) {
+            throw new NumberFormatException("Expected a long but was " + value);
+        }
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if ((int) value != value)
+            throw new NumberFormatException("Expected an int but was " + value);
+
+        return (int) value;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_ARRAY:
+                beginArray();
+                while (hasNext())
+                    skipValue();
+                endArray();
+                break;
+            case BEGIN_OBJECT:
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case NAME:
+                nextName();
+                break;
+            case STRING:
+            case NUMBER:
+                nextString();
+                break;
+            case BOOLEAN:
+                nextBoolean();
+                break;
+            case NULL:
+                nextNull();
+                break;
+            default:
+                throw syntaxError("Nothing to skip");
+        }
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public String getPath() {
+        return "$";
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " at byte " + pos;
+    }
+
+    private void expect(JsonToken expected) throws IOException {
+        JsonToken token = peek();
+        if (token != expected)
+            throw syntaxError("Expected " + expected + " but was " + token);
+    }
+
+    private void push(int kind, long length) {
+        valueConsumed();
+
+        if (depth == kinds.length) {
+            kinds = Arrays.copyOf(kinds, depth * 2);
+            remaining = Arrays.copyOf(remaining, depth * 2);
+            nameNext = Arrays.copyOf(nameNext, depth * 2);
+        }
+
+        kinds[depth] = kind;
+        remaining[depth] = length;
+        nameNext[depth] = kind == OBJECT;
+        depth++;
+    }
+
+    private void pop() {
+        if (remaining[depth - 1] < 0)
+            pos++; // the break byte
+
+        depth--;
+        peeked = null;
+    }
+
+    /**
+     * Accounts for a value just consumed in the current array or object.
+     */
+    private void valueConsumed() {
+        peeked = null;
+
+        if (depth > 0) {
+            int top = depth - 1;
+            if (remaining[top] > 0)
+                remaining[top]--;
+
+            if (kinds[top] == OBJECT)
+                nameNext[top] = true;
+        }
+    }
+
+    private void skipTags() throws IOException {
+        while ((byteAt(pos) & 0xff) >>> 5 == 6)
+            readArgument();
+    }
+
+    /**
+     * Reads the length of an array or object.
+     * @return the length, or -1 if indefinite
+     */
+    private long readLength() throws IOException {
+        skipTags();
+        if ((byteAt(pos) & 0x1f) == 31) {
+            pos++;
+            return -1;
+        }
+
+        long length = readArgument();
+        if (length < 0)
+            throw syntaxError("Length too large");
+
+        return length;
+    }
+
+    private String readText() throws IOException {
+        skipTags();
+        if ((byteAt(pos) & 0x1f) != 31) {
+            long length = readArgument();
+            if (length < 0 || length > end - pos)
+                throw syntaxError("Truncated text string");
+
+            String text = new String(in, pos, (int) length, StandardCharsets.UTF_8);
+            pos += (int) length;
+            return text;
+        }
+
+        // indefinite length string, made of definite length chunks
+        pos++;
+        StringBuilder text = new StringBuilder();
+        while (byteAt(pos) != (byte) 0xff)
+            text.append(readText());
+
+        pos++;
+        return text.toString();
+    }
+
+    private Number readNumber() throws IOException {
+        skipTags();
+        int initial = byteAt(pos) & 0xff;
+        Number value;
+
+        switch (initial >>> 5) {
+            case 0: {
+                long argument = readArgument();
+                value = argument >= 0 ? (Number) argument : unsigned(argument);
+                break;
+            }
+            case 1: {
+                long argument = readArgument();
+                value = argument >= 0 ? (Number) (-1 - argument) : unsigned(argument).negate().subtract(BigInteger.ONE);
+                break;
+            }
+            default:
+                pos++;
+                switch (initial & 0x1f) {
+                    case 25:
+                        value = halfToFloat((int) readBytes(2));
+                        break;
+                    case 26:
+                        value = Float.intBitsToFloat((int) readBytes(4));
+                        break;
+                    default:
+                        value = Double.longBitsToDouble(readBytes(8));
+                }
+        }
+
+        valueConsumed();
+        return value;
+    }
+
+    /**
+     * Reads the initial byte of a data item and its argument.
+     * @return the argument, to be interpreted as unsigned
+     */
+    private long readArgument() throws IOException {
+        int additional = byteAt(pos++) & 0x1f;
+
+        if (additional < 24)
+            return additional;
+        else if (additional == 24)
+            return readBytes(1);
+        else if (additional == 25)
+            return readBytes(2);
+        else if (additional == 26)
+            return readBytes(4);
+        else if (additional == 27)
+            return readBytes(8);
+        else
+            throw syntaxError("Unexpected additional information " + additional);
+    }
+
+    private long readBytes(int count) throws IOException {
+        if (end - pos < count)
+            throw syntaxError("Truncated data item");
+
+        long value = 0;
+        for (int i = 0; i < count; i++)
+            value = (value << 8) | (in[pos++] & 0xff);
+
+        return value;
+    }
+
+    private byte byteAt(int position) throws IOException {
+        if (position >= end)
+            throw syntaxError("Unexpected end of document");
+
+        return in[position];
+    }
+
+    private IOException syntaxError(String message) {
+        return new MalformedJsonException(message + " at byte " + pos);
+    }
+
+    private static BigInteger unsigned(long value) {
+        return new BigInteger(Long.toUnsignedString(value));
+    }
+
+    private static float halfToFloat(int bits) {
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        float value;
+
+        if (exponent == 0)
+            value = (float) (mantissa * Math.pow(2, -24));
+        else if (exponent == 31)
+            value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        else
+            value = (float) ((mantissa + 1024) * Math.pow(2, exponent - 25));
+
+        return (bits & 0x8000) != 0 ? -value : value;
+    }
+}
@@ -0,0 +1,235 @@
+package io.websocket.stomp.client.codec;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A writer of CBOR (RFC 7049) documents, driven by the GSON type adapters as if it were a JSON writer.
+ * Arrays and objects are written with indefinite length, since their size is not known in advance.
+ */
+class CborWriter extends JsonWriter {
+    private final static Writer UNUSED = new Writer() {
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    };
+
+    private final ByteArrayOutputStream out;
+
+    /**
+     * The name of the next member of the current object, written only when its value is known,
+     * so that members with a {@code null} value can be omitted.
+     */
+    private String deferredName;
+
+    CborWriter(ByteArrayOutputStream out) {
+        super(UNUSED);
+        this.out = out;
+    }
+
+    @Override
+    public JsonWriter beginArray() {
+        writeDeferredName();
+        out.write(0x9f);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() {
+        out.write(0xff);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() {
+        writeDeferredName();
+        out.write(0xbf);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() {
+        if (deferredName != null)
+            throw new IllegalStateException("Dangling name: " + deferredName);
+
+        out.write(0xff);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) {
+        Objects.requireNonNull(name, "name");
+        if (deferredName != null)
+            throw new IllegalStateException("Dangling name: " + deferredName);
+
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) {
+        if (value == null)
+            return nullValue();
+
+        writeDeferredName();
+        writeText(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) {
+        throw new UnsupportedOperationException("Raw JSON values cannot be written as CBOR");
+    }
+
+    @Override
+    public JsonWriter nullValue() {
+        if (deferredName != null) {
+            if (!getSerializeNulls()) {
+                deferredName = null;
+                return this;
+            }
+
+            writeDeferredName();
+        }
+
+        out.write(0xf6);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) {
+        writeDeferredName();
+        out.write(value ? 0xf5 : 0xf4);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) {
+        return value == null ? nullValue() : value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(double value) {
+        if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value)))
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+
+        writeDeferredName();
+        writeDouble(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) {
+        writeDeferredName();
+        writeLong(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) {
+        if (value == null)
+            return nullValue();
+
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicInteger || value instanceof AtomicLong)
+            return value(value.longValue());
+        else if (value instanceof Double || value instanceof Float)
+            return value(value.doubleValue());
+
+        // arbitrary precision numbers, such as those parsed lazily by GSON
+        BigDecimal decimal = new BigDecimal(value.toString());
+        try {
+            return value(decimal.longValueExact());
+        }
+        catch (ArithmeticException e) {
+            return value(decimal.doubleValue());
+        }
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+    private void writeDeferredName() {
+        if (deferredName != null) {
+            writeText(deferredName);
+            deferredName = null;
+        }
+    }
+
+    private void writeText(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHead(3, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private void writeLong(long value) {
+        if (value >= 0)
+            writeHead(0, value);
+        else
+            writeHead(1, -1 - value);
+    }
+
+    private void writeDouble(double value) {
+        float single = (float) value;
+        if (single == value || Double.isNaN(value)) {
+            out.write(0xfa);
+            writeBytes(Float.floatToIntBits(single), 4);
+        }
+        else {
+            out.write(0xfb);
+            writeBytes(Double.doubleToLongBits(value), 8);
+        }
+    }
+
+    /**
+     * Writes the initial bytes of a data item.
+     *
+     * @param majorType the major type of the item
+     * @param argument the argument of the item, interpreted as unsigned
+     */
+    private void writeHead(int majorType, long argument) {
+        int type = majorType << 5;
+
+        if (argument >= 0 && argument < 24)
+            out.write(type | (int) argument);
+        else if (argument >= 0 && argument <= 0xffL) {
+            out.write(type | 24);
+            writeBytes(argument, 1);
+        }
+        else if (argument >= 0 && argument <= 0xffffL) {
+            out.write(type | 25);
+            writeBytes(argument, 2);
+        }
+        else if (argument >= 0 && argument <= 0xffffffffL) {
+            out.write(type | 26);
+            writeBytes(argument, 4);
+        }
+        else {
+            out.write(type | 27);
+            writeBytes(argument, 8);
+        }
+    }
+
+    private void writeBytes(long value, int count) {
+        for (int shift = (count - 1) * 8; shift >= 0; shift -= 8)
+            out.write((int) (value >>> shift) & 0xff);
+    }
+}
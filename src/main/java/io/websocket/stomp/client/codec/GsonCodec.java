@@ -0,0 +1,128 @@
+package io.websocket.stomp.client.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.util.MimeType;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The JSON codec, implemented with the GSON library. Payloads are decoded by streaming their
+ * UTF-8 bytes into the parser, without copying them into an intermediate string.
+ */
+@ThreadSafe
+public class GsonCodec implements MessageCodec {
+    public final static MimeType CONTENT_TYPE = new MimeType("application", "json");
+    private final static byte[] NULL_LITERAL = "null".getBytes(StandardCharsets.UTF_8);
+    private final Gson gson;
+
+    /**
+     * The type adapters used so far, per target type.
+     */
+    private final ConcurrentHashMap<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
+
+    public GsonCodec() {
+        this(new GsonBuilder().disableHtmlEscaping().create());
+    }
+
+    public GsonCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public MimeType getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(Object payload) {
+        if (payload == null)
+            return NULL_LITERAL.clone();
+        else
+            return gson.toJson(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Object decode(byte[] json, Type type) throws IOException {
+        int start = 0, end = json.length;
+        while (start < end && isWhitespace(json[start]))
+            start++;
+        while (end > start && isWhitespace(json[end - 1]))
+            end--;
+
+        if (start == end || isNullLiteral(json, start, end))
+            return null;
+        else
+            return read(json, start, end, type);
+    }
+
+    /**
+     * Parses a JSON document incrementally, as its bytes are read from the stream.
+     */
+    @Override
+    public Object decode(InputStream json, Type type) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(json, StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        try {
+            reader.peek();
+        }
+        catch (EOFException e) {
+            // an empty document
+            return null;
+        }
+
+        return read(reader, type);
+    }
+
+    /**
+     * Parses a JSON document from a slice of a byte array, as {@link Gson#fromJson(String, Type)} would do.
+     *
+     * @param json the bytes of the document
+     * @param start the start of the document, inclusive
+     * @param end the end of the document, exclusive
+     * @param type the type of the result
+     * @return the parsed object
+     * @throws IOException if the document is malformed
+     */
+    private Object read(byte[] json, int start, int end, Type type) throws IOException {
+        return read(new JsonReader(new InputStreamReader(new ByteArrayInputStream(json, start, end - start), StandardCharsets.UTF_8)), type);
+    }
+
+    private Object read(JsonReader reader, Type type) throws IOException {
+        reader.setLenient(true);
+
+        Object result = adapters.computeIfAbsent(type, _type -> gson.getAdapter(TypeToken.get(_type))).read(reader);
+        if (reader.peek() != JsonToken.END_DOCUMENT)
+            throw new JsonIOException("JSON document was not fully consumed.");
+
+        return result;
+    }
+
+    private static boolean isNullLiteral(byte[] json, int start, int end) {
+        if (end - start != NULL_LITERAL.length)
+            return false;
+
+        for (int i = 0; i < NULL_LITERAL.length; i++)
+            if (json[start + i] != NULL_LITERAL[i])
+                return false;
+
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
@@ -0,0 +1,54 @@
+package io.websocket.stomp.client.codec;
+
+import org.springframework.util.MimeType;
+import org.springframework.util.StreamUtils;
+
+import java.io.InputStream;
+import java.lang.reflect.Type;
+
+/**
+ * A serialization format of the payloads of the messages, identified by the content type of the messages.
+ * Implementations must be thread safe.
+ */
+public interface MessageCodec {
+
+    /**
+     * Yields the content type of the messages encoded by this codec. A message is decoded by this codec if its
+     * content type has the same type and subtype and carries all the parameters of this content type.
+     *
+     * @return the content type
+     */
+    MimeType getContentType();
+
+    /**
+     * Encodes a payload.
+     *
+     * @param payload the payload, possibly {@code null}
+     * @return the encoded payload
+     * @throws Exception if the payload cannot be encoded
+     */
+    byte[] encode(Object payload) throws Exception;
+
+    /**
+     * Decodes a payload.
+     *
+     * @param payload the encoded payload
+     * @param type the type of the result
+     * @return the decoded payload, or {@code null} if the payload is empty or encodes a {@code null} reference
+     * @throws Exception if the payload cannot be decoded
+     */
+    Object decode(byte[] payload, Type type) throws Exception;
+
+    /**
+     * Decodes a payload read from a stream, such as a payload received in chunks. By default, the stream
+     * is read into an array which is then decoded; codecs that can parse incrementally override it.
+     *
+     * @param payload the stream of the encoded payload
+     * @param type the type of the result
+     * @return the decoded payload, or {@code null} if the payload is empty or encodes a {@code null} reference
+     * @throws Exception if the payload cannot be decoded
+     */
+    default Object decode(InputStream payload, Type type) throws Exception {
+        return decode(StreamUtils.copyToByteArray(payload), type);
+    }
+}
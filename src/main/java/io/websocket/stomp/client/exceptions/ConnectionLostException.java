@@ -0,0 +1,8 @@
+package io.websocket.stomp.client.exceptions;
+
+public class ConnectionLostException extends InternalFailureException {
+
+    public ConnectionLostException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,41 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An exponential backoff with jitter: the delay before an attempt doubles at each attempt, up to a maximum,
+ * and a random part of it is subtracted, so that many clients losing their connection at the same time
+ * do not retry at the same time.
+ */
+@Immutable
+public class Backoff {
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final double jitter;
+
+    /**
+     * Builds a backoff.
+     *
+     * @param initialDelayMillis the delay before the first attempt, in milliseconds
+     * @param maxDelayMillis the maximal delay before an attempt, in milliseconds
+     * @param jitter the maximal random fraction of the delay subtracted from it, between 0 and 1
+     */
+    public Backoff(long initialDelayMillis, long maxDelayMillis, double jitter) {
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Yields the delay before an attempt.
+     * @param attempt the number of the attempt, starting from 1
+     * @return the delay in milliseconds
+     */
+    public long delayMillis(int attempt) {
+        double delay = initialDelayMillis * Math.pow(2, Math.min(attempt - 1, 62));
+        delay = Math.min(delay, maxDelayMillis);
+        return (long) (delay * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+}
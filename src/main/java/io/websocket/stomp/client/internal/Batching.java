@@ -0,0 +1,90 @@
+package io.websocket.stomp.client.internal;
+
+import io.websocket.stomp.client.BatchMetrics;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How the outbound frames of a websocket session are coalesced into batches, and the counters of the batches written.
+ * The counters outlive the sessions, so that they cover the reconnections.
+ */
+@ThreadSafe
+public class Batching {
+
+    /**
+     * True if the frames are coalesced; otherwise each frame is written as soon as possible, in a batch of its own.
+     */
+    final boolean enabled;
+
+    /**
+     * The maximal time a frame waits for others to join its batch, in milliseconds.
+     */
+    final long lingerMillis;
+
+    /**
+     * The size of a batch that gets written without waiting any longer.
+     */
+    final int maxBytes;
+
+    /**
+     * The number of frames of a batch that gets written without waiting any longer.
+     */
+    final int maxFrames;
+
+    /**
+     * The scheduler of the writes of the batches whose time is over.
+     */
+    final ScheduledExecutorService scheduler;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAccumulator maxFramesPerBatch = new LongAccumulator(Math::max, 0);
+
+    private Batching(boolean enabled, long lingerMillis, int maxBytes, int maxFrames, ScheduledExecutorService scheduler) {
+        this.enabled = enabled;
+        this.lingerMillis = lingerMillis;
+        this.maxBytes = maxBytes;
+        this.maxFrames = maxFrames;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Yields the policy that writes each frame in a batch of its own.
+     * @return the policy
+     */
+    public static Batching disabled() {
+        return new Batching(false, 0, 0, 1, null);
+    }
+
+    /**
+     * Yields the policy that coalesces the frames into batches.
+     *
+     * @param lingerMillis the maximal time a frame waits for others to join its batch, in milliseconds
+     * @param maxBytes the size of a batch that gets written without waiting any longer
+     * @param maxFrames the number of frames of a batch that gets written without waiting any longer
+     * @param scheduler the scheduler of the writes of the batches whose time is over
+     * @return the policy
+     */
+    public static Batching of(long lingerMillis, int maxBytes, int maxFrames, ScheduledExecutorService scheduler) {
+        return new Batching(true, lingerMillis, maxBytes, maxFrames, scheduler);
+    }
+
+    void record(int framesInBatch, long bytesInBatch) {
+        batches.increment();
+        frames.add(framesInBatch);
+        bytes.add(bytesInBatch);
+        maxFramesPerBatch.accumulate(framesInBatch);
+    }
+
+    /**
+     * Yields a snapshot of the counters of the batches written so far.
+     * @return the snapshot
+     */
+    public BatchMetrics metrics() {
+        return new BatchMetrics(batches.sum(), frames.sum(), bytes.sum(), maxFramesPerBatch.get());
+    }
+}
@@ -0,0 +1,287 @@
+package io.websocket.stomp.client.internal;
+
+import io.websocket.stomp.client.exceptions.InternalFailureException;
+import io.websocket.stomp.client.models.ErrorModel;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The frame handler of a subscription in a session, that reassembles the payloads sent in chunks before handing
+ * them to the frame handler of the subscription. The chunks of a payload carry its headers, plus its id, their
+ * index and their number, and may arrive in any order. The payload is decoded as soon as its last chunk arrives,
+ * by streaming its chunks into the codec, without copying them into a single buffer.
+ * <p>
+ * The memory held is bounded whatever the senders and the size of their chunks: each chunk kept is charged its bytes
+ * plus a fixed overhead against the maximal size of a payload, there is a bounded number of payloads at a time,
+ * and the payloads whose chunks stop arriving are forgotten.
+ * The frames of a session are handled by one thread at a time, hence a handler per session, closed with it.
+ */
+@ThreadSafe
+public class ChunkedFrameHandler implements StompFrameHandler {
+    public final static String CHUNK_ID_HEADER = "chunk-id";
+    public final static String CHUNK_INDEX_HEADER = "chunk-index";
+    public final static String CHUNK_COUNT_HEADER = "chunk-count";
+
+    /**
+     * The memory held by a chunk beyond its bytes, in bytes, charged against the maximal size of its payload:
+     * a payload in many small chunks holds much more memory than its size.
+     */
+    public final static int CHUNK_OVERHEAD_BYTES = 64;
+
+    /**
+     * The default maximal number of payloads being reassembled at a time.
+     */
+    public final static int MAX_TRANSFERS = 64;
+
+    /**
+     * The default time after which a payload whose chunks stopped arriving is forgotten, in milliseconds.
+     */
+    public final static long TRANSFER_TIMEOUT_MILLIS = 60_000;
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(ChunkedFrameHandler.class);
+
+    private final StompFrameHandler delegate;
+    private final CodecMessageConverter converter;
+    private final int maxBytes;
+    private final int maxChunks;
+    private final int maxTransfers;
+    private final long transferTimeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The payloads whose chunks are arriving, per id, from the least recently to the most recently active one.
+     */
+    @GuardedBy("lock")
+    private final LinkedHashMap<String, Transfer> transfers = new LinkedHashMap<>(16, 0.75f, true);
+
+    @GuardedBy("lock")
+    private boolean closed;
+
+    /**
+     * Builds the handler of a subscription in a session.
+     *
+     * @param delegate the frame handler of the subscription
+     * @param converter the converter that decodes the reassembled payloads
+     * @param maxBytes the maximal memory held by a payload, its size plus {@link #CHUNK_OVERHEAD_BYTES} per chunk;
+     *                 the chunks of larger payloads are dropped
+     * @param maxTransfers the maximal number of payloads being reassembled at a time, beyond which the least
+     *                     recently active one is forgotten
+     * @param transferTimeoutMillis the time after which a payload whose chunks stopped arriving is forgotten,
+     *                              in milliseconds
+     */
+    public ChunkedFrameHandler(StompFrameHandler delegate, CodecMessageConverter converter, int maxBytes, int maxTransfers,
+                               long transferTimeoutMillis) {
+        this.delegate = delegate;
+        this.converter = converter;
+        this.maxBytes = maxBytes;
+        // the overhead of the chunks alone exceeds the limit beyond this number
+        this.maxChunks = Math.max(1, maxBytes / CHUNK_OVERHEAD_BYTES);
+        this.maxTransfers = maxTransfers;
+        this.transferTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(transferTimeoutMillis);
+    }
+
+    @Override
+    public Type getPayloadType(StompHeaders headers) {
+        return headers.containsKey(CHUNK_ID_HEADER) ? EncodedPayload.class : delegate.getPayloadType(headers);
+    }
+
+    @Override
+    public void handleFrame(StompHeaders headers, Object payload) {
+        String id = headers.getFirst(CHUNK_ID_HEADER);
+        if (id == null) {
+            delegate.handleFrame(headers, payload);
+            return;
+        }
+
+        int index, count;
+        try {
+            index = Integer.parseInt(headers.getFirst(CHUNK_INDEX_HEADER));
+            count = Integer.parseInt(headers.getFirst(CHUNK_COUNT_HEADER));
+        }
+        catch (NumberFormatException e) {
+            LOGGER.error("[WsClient] Dropped chunk of message {} to {}: {}", id, headers.getDestination(), e.getMessage());
+            return;
+        }
+
+        if (count < 1 || count > maxChunks || index < 0 || index >= count || !(payload instanceof EncodedPayload)) {
+            LOGGER.error("[WsClient] Dropped chunk {} of {} of message {} to {}", index, count, id, headers.getDestination());
+            return;
+        }
+
+        Transfer complete;
+        lock.lock();
+        try {
+            complete = add(id, index, count, ((EncodedPayload) payload).bytes, headers.getDestination());
+        }
+        finally {
+            lock.unlock();
+        }
+
+        if (complete != null)
+            deliver(headers, complete);
+    }
+
+    /**
+     * Yields the number of payloads being reassembled.
+     * @return the number of payloads
+     */
+    public int transfers() {
+        lock.lock();
+        try {
+            return transfers.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets the payloads being reassembled, since their session is closed, and drops the chunks arriving later.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            transfers.clear();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a chunk to its transfer.
+     *
+     * @return the transfer, if the chunk completes it and it can be delivered
+     */
+    @GuardedBy("lock")
+    private Transfer add(String id, int index, int count, byte[] chunk, String destination) {
+        if (closed)
+            return null;
+
+        long now = System.nanoTime();
+        evict(now);
+
+        Transfer transfer = transfers.get(id);
+        if (transfer == null) {
+            if (transfers.size() >= maxTransfers) {
+                Iterator<Map.Entry<String, Transfer>> eldest = transfers.entrySet().iterator();
+                LOGGER.error("[WsClient] Dropped message {}: more than {} messages in chunks at a time", eldest.next().getKey(), maxTransfers);
+                eldest.remove();
+            }
+
+            transfer = new Transfer(count);
+            transfers.put(id, transfer);
+        }
+
+        if (transfer.count != count || transfer.chunks.containsKey(index)) {
+            LOGGER.error("[WsClient] Dropped chunk {} of {} of message {} to {}", index, count, id, destination);
+            return null;
+        }
+
+        transfer.lastNanos = now;
+        transfer.chunks.put(index, transfer.dropped ? Transfer.EMPTY : chunk);
+        if (!transfer.dropped) {
+            transfer.bytes += chunk.length;
+            transfer.heldBytes += chunk.length + CHUNK_OVERHEAD_BYTES;
+            if (transfer.heldBytes > maxBytes) {
+                LOGGER.error("[WsClient] Dropped message {} to {}: larger than {} bytes", id, destination, maxBytes);
+                transfer.drop();
+            }
+        }
+
+        if (transfer.chunks.size() < count)
+            return null;
+
+        transfers.remove(id);
+        return transfer.dropped ? null : transfer;
+    }
+
+    /**
+     * Forgets the payloads whose chunks stopped arriving.
+     */
+    @GuardedBy("lock")
+    private void evict(long now) {
+        Iterator<Map.Entry<String, Transfer>> eldest = transfers.entrySet().iterator();
+        while (eldest.hasNext()) {
+            Map.Entry<String, Transfer> entry = eldest.next();
+            if (now - entry.getValue().lastNanos <= transferTimeoutNanos)
+                return;
+
+            LOGGER.error("[WsClient] Dropped message {}: no chunk for {} ms", entry.getKey(), TimeUnit.NANOSECONDS.toMillis(now - entry.getValue().lastNanos));
+            eldest.remove();
+        }
+    }
+
+    private void deliver(StompHeaders chunkHeaders, Transfer transfer) {
+        StompHeaders headers = new StompHeaders();
+        headers.putAll(chunkHeaders);
+        headers.remove(CHUNK_ID_HEADER);
+        headers.remove(CHUNK_INDEX_HEADER);
+        headers.remove(CHUNK_COUNT_HEADER);
+        headers.setContentLength(transfer.bytes);
+
+        List<InputStream> chunks = new ArrayList<>(transfer.count);
+        for (int index = 0; index < transfer.count; index++)
+            chunks.add(new ByteArrayInputStream(transfer.chunks.get(index)));
+
+        Class<?> type = ResolvableType.forType(delegate.getPayloadType(headers)).resolve(Object.class);
+        Object payload;
+        try {
+            payload = converter.decode(new SequenceInputStream(Collections.enumeration(chunks)), (int) transfer.bytes, headers, type);
+        }
+        catch (InternalFailureException e) {
+            payload = new ErrorModel(e);
+        }
+
+        delegate.handleFrame(headers, payload);
+    }
+
+    /**
+     * The chunks of a payload received so far, per index: the table grows as they arrive, whatever their number.
+     */
+    private static class Transfer {
+        private final int count;
+        private final Map<Integer, byte[]> chunks = new HashMap<>();
+        private long bytes;
+        private long heldBytes;
+        private long lastNanos;
+
+        /**
+         * True if the payload is too large: its further chunks are counted, so that the transfer is forgotten
+         * after the last one, but not kept.
+         */
+        private boolean dropped;
+
+        private Transfer(int count) {
+            this.count = count;
+        }
+
+        private void drop() {
+            dropped = true;
+            // the chunks received so far are released, yet their slots are still marked as received
+            chunks.replaceAll((index, chunk) -> EMPTY);
+        }
+
+        private final static byte[] EMPTY = new byte[0];
+    }
+}
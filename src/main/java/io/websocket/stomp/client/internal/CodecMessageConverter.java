@@ -0,0 +1,224 @@
+package io.websocket.stomp.client.internal;
+
+import io.websocket.stomp.client.MetricsRegistry;
+import io.websocket.stomp.client.codec.MessageCodec;
+import io.websocket.stomp.client.exceptions.InternalFailureException;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A webSocket message converter that delegates to the codec of the content type of each message.
+ * The messages without a content type, or with an unknown content type, are handled by the default codec.
+ * The payloads sent are compressed above the threshold of the compression, and the compressed payloads received
+ * are decompressed. The converter measures the size of the payloads and the time spent encoding and decoding them,
+ * and traces a sample of the messages.
+ */
+public class CodecMessageConverter extends AbstractMessageConverter {
+    private final List<MessageCodec> codecs;
+    private final MessageCodec defaultCodec;
+    private final MetricsRegistry metrics;
+    private final MessageTracer tracer;
+    private final Compression compression;
+
+    /**
+     * Builds the converter.
+     * @param codecs the codecs, the first being the default one
+     * @param metrics the registry of the measurements
+     * @param tracer the tracer of the messages
+     * @param compression the compression of the payloads sent, and the bounds of the payloads decompressed
+     */
+    public CodecMessageConverter(List<MessageCodec> codecs, MetricsRegistry metrics, MessageTracer tracer, Compression compression) {
+        super(codecs.stream().map(MessageCodec::getContentType).collect(Collectors.toList()));
+        this.codecs = codecs;
+        this.defaultCodec = codecs.get(0);
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.compression = compression;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return true;
+    }
+
+    @Override
+    protected boolean canConvertTo(Object payload, MessageHeaders headers) {
+        return true;
+    }
+
+    @Override
+    protected boolean canConvertFrom(Message<?> message, Class<?> targetClass) {
+        return true;
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        try {
+            byte[] payload = (byte[]) message.getPayload();
+            long start = System.nanoTime();
+            List<String> encodings = nativeHeader(message.getHeaders(), Compression.CONTENT_ENCODING_HEADER);
+            boolean deflated = encodings != null && encodings.contains(Compression.DEFLATE);
+            byte[] decompressed = deflated ? compression.decompress(payload, maxBytes(message.getHeaders())) : payload;
+
+            // a payload nobody expects is left encoded
+            if (targetClass == EncodedPayload.class)
+                return new EncodedPayload(decompressed);
+
+            List<String> originalContentType = deflated ? nativeHeader(message.getHeaders(), Compression.ORIGINAL_CONTENT_TYPE_HEADER) : null;
+            MimeType contentType = originalContentType != null ? MimeTypeUtils.parseMimeType(originalContentType.get(0)) : getMimeType(message.getHeaders());
+            Object result = codecFor(contentType).decode(decompressed, targetClass);
+            long decodeNanos = System.nanoTime() - start;
+            String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+            metrics.messageReceived(destination, payload.length, decodeNanos);
+            tracer.received(destination, SimpMessageHeaderAccessor.getSessionId(message.getHeaders()), payload.length, decodeNanos);
+            return result != null ? result : new NullObject();
+        }
+        catch (Exception e) {
+            String exceptionMessage = e.getMessage() != null ? ": " + e.getMessage() : "";
+            throw new InternalFailureException("Error deserializing message" + exceptionMessage);
+        }
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        long start = System.nanoTime();
+        byte[] bytes = payload instanceof EncodedPayload ? ((EncodedPayload) payload).bytes : encode(payload, getMimeType(headers));
+
+        if (compression.compresses(bytes.length)) {
+            StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(headers, StompHeaderAccessor.class);
+            if (accessor != null && accessor.isMutable()) {
+                MimeType contentType = getMimeType(headers);
+                bytes = compression.compress(bytes);
+                accessor.setNativeHeader(Compression.CONTENT_ENCODING_HEADER, Compression.DEFLATE);
+                if (contentType != null)
+                    accessor.setNativeHeader(Compression.ORIGINAL_CONTENT_TYPE_HEADER, contentType.toString());
+                accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            }
+        }
+
+        sent(headers, bytes.length, System.nanoTime() - start);
+        return bytes;
+    }
+
+    /**
+     * Yields the maximal size of a decompressed payload: the chunks of a payload received in many frames
+     * are bounded by the size of the whole payload.
+     */
+    private int maxBytes(MessageHeaders headers) {
+        return nativeHeader(headers, ChunkedFrameHandler.CHUNK_ID_HEADER) != null ? compression.chunkMaxBytes : compression.maxBytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> nativeHeader(MessageHeaders headers, String name) {
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        return nativeHeaders != null ? nativeHeaders.get(name) : null;
+    }
+
+    private void sent(MessageHeaders headers, int bytes, long encodeNanos) {
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        metrics.messageSent(destination, bytes, encodeNanos);
+        tracer.sent(destination, SimpMessageHeaderAccessor.getSessionId(headers), bytes, encodeNanos);
+    }
+
+    /**
+     * Encodes a payload with the codec of a content type, unless it is already encoded.
+     *
+     * @param payload the payload, possibly {@code null}
+     * @param contentType the content type, possibly {@code null} for the default codec
+     * @return the encoded payload
+     * @throws InternalFailureException if the payload cannot be encoded
+     */
+    public byte[] encode(Object payload, MimeType contentType) {
+        if (payload instanceof EncodedPayload)
+            return ((EncodedPayload) payload).bytes;
+
+        try {
+            return codecFor(contentType).encode(payload);
+        }
+        catch (Exception e) {
+            String exceptionMessage = e.getMessage() != null ? ": " + e.getMessage() : "";
+            throw new InternalFailureException("Error serializing Java object: " + exceptionMessage);
+        }
+    }
+
+    /**
+     * Decodes a payload read from a stream, such as a payload received in chunks, with the codec of its content type.
+     *
+     * @param payload the stream of the encoded payload
+     * @param bytes the size of the encoded payload
+     * @param headers the headers of the message
+     * @param targetClass the type of the result
+     * @return the decoded payload, a {@link NullObject} if it is a {@code null} reference
+     * @throws InternalFailureException if the payload cannot be decoded
+     */
+    public Object decode(InputStream payload, int bytes, StompHeaders headers, Class<?> targetClass) {
+        try {
+            if (targetClass == EncodedPayload.class)
+                return new EncodedPayload(StreamUtils.copyToByteArray(payload));
+
+            // the chunks of a compressed payload are decompressed one by one, yet keep the headers of the compression
+            String originalContentType = headers.getFirst(Compression.ORIGINAL_CONTENT_TYPE_HEADER);
+            MimeType contentType = originalContentType != null ? MimeTypeUtils.parseMimeType(originalContentType) : headers.getContentType();
+
+            long start = System.nanoTime();
+            Object result = codecFor(contentType).decode(payload, targetClass);
+            long decodeNanos = System.nanoTime() - start;
+            metrics.messageReceived(headers.getDestination(), bytes, decodeNanos);
+            tracer.received(headers.getDestination(), headers.getSession(), bytes, decodeNanos);
+            return result != null ? result : new NullObject();
+        }
+        catch (Exception e) {
+            String exceptionMessage = e.getMessage() != null ? ": " + e.getMessage() : "";
+            throw new InternalFailureException("Error deserializing message" + exceptionMessage);
+        }
+    }
+
+    /**
+     * Yields the most specific codec for a content type: among the codecs whose content type has the same type
+     * and subtype, the one with most parameters, all carried by the given content type.
+     *
+     * @param contentType the content type, possibly {@code null}
+     * @return the codec, or the default codec if none matches
+     */
+    private MessageCodec codecFor(MimeType contentType) {
+        if (contentType == null)
+            return defaultCodec;
+
+        MessageCodec best = null;
+        for (MessageCodec codec: codecs) {
+            MimeType candidate = codec.getContentType();
+            if (candidate.equalsTypeAndSubtype(contentType) && carriesParameters(contentType, candidate)
+                    && (best == null || candidate.getParameters().size() > best.getContentType().getParameters().size()))
+                best = codec;
+        }
+
+        return best != null ? best : defaultCodec;
+    }
+
+    private static boolean carriesParameters(MimeType contentType, MimeType candidate) {
+        for (Map.Entry<String, String> parameter: candidate.getParameters().entrySet())
+            if (!parameter.getValue().equalsIgnoreCase(contentType.getParameter(parameter.getKey())))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Special object to wrap a {@code null} reference
+     */
+    public static class NullObject {}
+}
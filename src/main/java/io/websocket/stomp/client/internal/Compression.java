@@ -0,0 +1,171 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The deflate compression of the payloads larger than a threshold. The compressed payloads are sent with
+ * a {@code content-encoding: deflate} header, and decompressed by the receiver whatever its own threshold.
+ * Since Spring STOMP transports send binary websocket frames only for content types compatible with
+ * {@code application/octet-stream}, the compressed payloads are sent with that content type, and their
+ * own content type goes in the {@code original-content-type} header.
+ * <p>
+ * The deflaters, inflaters and their buffers are pooled, and shared by all clients, so that the only allocation
+ * per payload is its result. The decompressed payloads are bounded in size, so that a small compressed payload
+ * cannot exhaust the memory.
+ */
+@ThreadSafe
+public class Compression {
+    public final static String CONTENT_ENCODING_HEADER = "content-encoding";
+    public final static String DEFLATE = "deflate";
+    public final static String ORIGINAL_CONTENT_TYPE_HEADER = "original-content-type";
+    private final static int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    private final static int INITIAL_BUFFER_SIZE = 8192;
+
+    /**
+     * The size above which the buffer of a context is not kept in the pool, so that a single large payload
+     * does not pin its buffer.
+     */
+    private final static int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    private final static BlockingQueue<Context> CONTEXTS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * The size of the payloads that get compressed, exclusive, or -1 if none are.
+     */
+    private final int thresholdBytes;
+
+    /**
+     * The maximal size of a decompressed payload received in one frame.
+     */
+    public final int maxBytes;
+
+    /**
+     * The maximal size of a decompressed chunk of a payload received in many frames.
+     */
+    public final int chunkMaxBytes;
+
+    /**
+     * Builds the compression of the payloads larger than a threshold.
+     *
+     * @param thresholdBytes the size of the payloads that get compressed, exclusive, or -1 if none are
+     * @param maxBytes the maximal size of a decompressed payload received in one frame
+     * @param chunkMaxBytes the maximal size of a decompressed chunk of a payload received in many frames
+     */
+    public Compression(int thresholdBytes, int maxBytes, int chunkMaxBytes) {
+        this.thresholdBytes = thresholdBytes;
+        this.maxBytes = maxBytes;
+        this.chunkMaxBytes = chunkMaxBytes;
+    }
+
+    /**
+     * Tells if a payload must be compressed.
+     *
+     * @param bytes the size of the payload
+     * @return true if the payload must be compressed
+     */
+    public boolean compresses(int bytes) {
+        return thresholdBytes >= 0 && bytes > thresholdBytes;
+    }
+
+    /**
+     * Compresses a payload.
+     *
+     * @param payload the payload
+     * @return the compressed payload
+     */
+    public byte[] compress(byte[] payload) {
+        Context context = acquire();
+        try {
+            Deflater deflater = context.deflater;
+            deflater.setInput(payload);
+            deflater.finish();
+
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == context.buffer.length)
+                    context.buffer = Arrays.copyOf(context.buffer, context.buffer.length * 2);
+
+                length += deflater.deflate(context.buffer, length, context.buffer.length - length);
+            }
+
+            return Arrays.copyOf(context.buffer, length);
+        }
+        finally {
+            context.deflater.reset();
+            release(context);
+        }
+    }
+
+    /**
+     * Decompresses a payload.
+     *
+     * @param payload the compressed payload
+     * @param maxBytes the maximal size of the payload
+     * @return the payload
+     * @throws DataFormatException if the payload is not deflate data, or is larger than {@code maxBytes}
+     */
+    public byte[] decompress(byte[] payload, int maxBytes) throws DataFormatException {
+        Context context = acquire();
+        try {
+            Inflater inflater = context.inflater;
+            inflater.setInput(payload);
+
+            int length = 0;
+            while (!inflater.finished()) {
+                // room for a byte more than the maximal size, so that a larger payload is detected
+                if (length == context.buffer.length)
+                    context.buffer = Arrays.copyOf(context.buffer, (int) Math.min(2L * length, maxBytes + 1L));
+
+                int inflated = inflater.inflate(context.buffer, length, context.buffer.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new DataFormatException("Truncated deflate data");
+
+                length += inflated;
+                if (length > maxBytes)
+                    throw new DataFormatException("Decompressed payload larger than " + maxBytes + " bytes");
+            }
+
+            return Arrays.copyOf(context.buffer, length);
+        }
+        finally {
+            context.inflater.reset();
+            release(context);
+        }
+    }
+
+    private Context acquire() {
+        Context context = CONTEXTS.poll();
+        return context != null ? context : new Context();
+    }
+
+    /**
+     * Returns a context to the pool, or releases its native memory if the pool is full.
+     */
+    private void release(Context context) {
+        if (context.buffer.length > MAX_POOLED_BUFFER_SIZE)
+            context.buffer = new byte[INITIAL_BUFFER_SIZE];
+
+        if (!CONTEXTS.offer(context)) {
+            context.deflater.end();
+            context.inflater.end();
+        }
+    }
+
+    /**
+     * A deflater and an inflater, with their output buffer.
+     */
+    @NotThreadSafe
+    private static class Context {
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final Inflater inflater = new Inflater();
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    }
+}
@@ -0,0 +1,37 @@
+package io.websocket.stomp.client.internal;
+
+import io.websocket.stomp.client.internal.PendingRequests.PendingRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+
+import java.lang.reflect.Type;
+
+/**
+ * Class which handles the replies of a websocket topic to pipelined requests. Each reply is matched
+ * to its request through the correlation id header.
+ */
+public class CorrelatingFrameHandler implements StompFrameHandler {
+    private final static Logger LOGGER = LoggerFactory.getLogger(CorrelatingFrameHandler.class);
+    private final PendingRequests pendingRequests;
+
+    public CorrelatingFrameHandler(PendingRequests pendingRequests) {
+        this.pendingRequests = pendingRequests;
+    }
+
+    @Override
+    public Type getPayloadType(StompHeaders headers) {
+        PendingRequest request = pendingRequests.get(headers.getFirst(PendingRequests.CORRELATION_ID_HEADER));
+        return request != null ? request.resultTypeClass : Object.class;
+    }
+
+    @Override
+    public void handleFrame(StompHeaders headers, Object payload) {
+        String correlationId = headers.getFirst(PendingRequests.CORRELATION_ID_HEADER);
+        PendingRequest request = pendingRequests.get(correlationId);
+
+        if (request == null || !pendingRequests.complete(correlationId, FrameHandler.toResult(payload, request.resultTypeClass), headers.getContentLength()))
+            LOGGER.info("[WsClient] Dropped reply with unknown correlation id {}", correlationId);
+    }
+}
@@ -0,0 +1,128 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The frame handler of a subscription shared by many local handlers, each for the destinations matching a pattern.
+ * The frames are routed by their {@code destination} header, and decoded once, with the result type of the first
+ * route matching their destination: the routes of a destination should expect the same result type. The frames
+ * that no route matches are not decoded. A handler that fails is logged, without depriving the other routes
+ * of the payload.
+ */
+@ThreadSafe
+public class DestinationRouter implements StompFrameHandler {
+    private final static Logger LOGGER = LoggerFactory.getLogger(DestinationRouter.class);
+
+    /**
+     * The routes matched by the frame being handled on the current thread, since the session asks for the payload
+     * type and then hands the frame on the same thread. The session does not hand the frame if its conversion fails,
+     * and does not ask for the type of a frame without body: the matches are used only for the same router
+     * and destination, and a frame without body is matched again.
+     */
+    private final static ThreadLocal<Matches> MATCHES = new ThreadLocal<>();
+
+    private final String subscription;
+    private final Dispatcher dispatcher;
+    private final BiConsumer<String, Object> listener;
+    private final DestinationTrie<Route> routes = new DestinationTrie<>();
+
+    /**
+     * Builds the router of a subscription.
+     *
+     * @param subscription the destination of the subscription, the key of its frames for the dispatcher
+     * @param dispatcher the dispatcher of the frames to the handlers of the routes
+     * @param listener the listener of the payloads routed and of their destination, called before their dispatch
+     */
+    public DestinationRouter(String subscription, Dispatcher dispatcher, BiConsumer<String, Object> listener) {
+        this.subscription = subscription;
+        this.dispatcher = dispatcher;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a route.
+     *
+     * @param pattern the pattern of the destinations of the route, as specified by {@link DestinationTrie}
+     * @param resultType the type of the payloads of the route
+     * @param handler the handler of the payloads, possibly {@code null} if the frame has no body
+     * @throws IllegalArgumentException if the pattern is not valid
+     */
+    public void addRoute(String pattern, Class<?> resultType, Consumer<Object> handler) {
+        routes.add(pattern, new Route(resultType, handler));
+    }
+
+    @Override
+    public Type getPayloadType(StompHeaders headers) {
+        String destination = destinationOf(headers);
+        List<Route> matches = routes.match(destination);
+        MATCHES.set(new Matches(this, destination, matches));
+        return matches.isEmpty() ? EncodedPayload.class : matches.get(0).resultType;
+    }
+
+    @Override
+    public void handleFrame(StompHeaders headers, Object payload) {
+        Matches cached = MATCHES.get();
+        MATCHES.remove();
+        if (payload instanceof EncodedPayload)
+            return;
+
+        String destination = destinationOf(headers);
+        List<Route> matches = payload != null && cached != null && cached.router == this && cached.destination.equals(destination)
+                ? cached.routes
+                : routes.match(destination);
+        if (matches.isEmpty())
+            return;
+
+        List<Route> routed = matches;
+        listener.accept(destination, payload);
+        dispatcher.dispatch(subscription, () -> {
+            for (Route route : routed) {
+                try {
+                    route.handler.accept(payload);
+                }
+                catch (RuntimeException e) {
+                    LOGGER.error("[WsClient] Handler of a route of " + destination + " failed", e);
+                }
+            }
+        });
+    }
+
+    private String destinationOf(StompHeaders headers) {
+        String destination = headers.getDestination();
+        return destination != null ? destination : subscription;
+    }
+
+    @Immutable
+    private static class Matches {
+        private final DestinationRouter router;
+        private final String destination;
+        private final List<Route> routes;
+
+        private Matches(DestinationRouter router, String destination, List<Route> routes) {
+            this.router = router;
+            this.destination = destination;
+            this.routes = routes;
+        }
+    }
+
+    @Immutable
+    private static class Route {
+        private final Class<?> resultType;
+        private final Consumer<Object> handler;
+
+        private Route(Class<?> resultType, Consumer<Object> handler) {
+            this.resultType = resultType;
+            this.handler = handler;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An index of values by destination patterns, that finds the values of the patterns matching a destination
+ * in a single pass over its segments, without regular expressions.
+ * <p>
+ * The segments of a destination are separated by {@code /} or {@code .}, and each segment keeps its separator,
+ * so that {@code /topic/prices.AAPL} and {@code /topic/prices/AAPL} are different destinations. In a pattern,
+ * a {@code *} segment matches any one segment with the same separator, and a {@code #} last segment matches
+ * all remaining segments, if any: {@code /topic/prices.*} matches {@code /topic/prices.AAPL}, and
+ * {@code /topic/#} matches {@code /topic}, {@code /topic/prices} and {@code /topic/prices.AAPL}.
+ *
+ * @param <V> the type of the values
+ */
+@ThreadSafe
+public class DestinationTrie<V> {
+    private final Node<V> root = new Node<>();
+
+    /**
+     * Adds a value for a pattern.
+     *
+     * @param pattern the pattern of the destinations
+     * @param value the value
+     * @throws IllegalArgumentException if a {@code #} segment of the pattern is not the last one
+     */
+    public void add(String pattern, V value) {
+        Node<V> node = root;
+        int start = 0;
+        while (start < pattern.length()) {
+            int end = nextSegment(pattern, start);
+            if (isSegment(pattern, start, end, '#')) {
+                if (end != pattern.length())
+                    throw new IllegalArgumentException("The # segment must be the last one of " + pattern);
+
+                node.tailValues.add(value);
+                return;
+            }
+
+            node = node.children.computeIfAbsent(pattern.substring(start, end), _segment -> new Node<>());
+            start = end;
+        }
+
+        node.values.add(value);
+    }
+
+    /**
+     * Yields the values of the patterns matching a destination.
+     *
+     * @param destination the destination
+     * @return the values, empty if no pattern matches
+     */
+    public List<V> match(String destination) {
+        List<V> matches = new ArrayList<>(1);
+        match(root, destination, 0, matches);
+        return matches;
+    }
+
+    private static <V> void match(Node<V> node, String destination, int start, List<V> matches) {
+        matches.addAll(node.tailValues);
+        if (start == destination.length()) {
+            matches.addAll(node.values);
+            return;
+        }
+
+        int end = nextSegment(destination, start);
+        Node<V> exact = node.children.get(destination.substring(start, end));
+        if (exact != null)
+            match(exact, destination, end, matches);
+
+        Node<V> wildcard = node.children.get(wildcardOf(destination.charAt(start)));
+        if (wildcard != null && wildcard != exact)
+            match(wildcard, destination, end, matches);
+    }
+
+    /**
+     * Yields the end of the segment starting at an index, that is the index of the next separator.
+     */
+    private static int nextSegment(String destination, int start) {
+        for (int i = start + 1; i < destination.length(); i++) {
+            char c = destination.charAt(i);
+            if (c == '/' || c == '.')
+                return i;
+        }
+
+        return destination.length();
+    }
+
+    /**
+     * Tells if a segment, with or without its separator, is a given single character.
+     */
+    private static boolean isSegment(String pattern, int start, int end, char segment) {
+        return pattern.charAt(end - 1) == segment && (end - start == 1 || (end - start == 2 && isSeparator(pattern.charAt(start))));
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == '.';
+    }
+
+    /**
+     * Yields the wildcard segment that matches a segment starting with a given character.
+     */
+    private static String wildcardOf(char first) {
+        return first == '/' ? "/*" : first == '.' ? ".*" : "*";
+    }
+
+    private static class Node<V> {
+        private final ConcurrentHashMap<String, Node<V>> children = new ConcurrentHashMap<>();
+
+        /**
+         * The values of the patterns ending at this node.
+         */
+        private final List<V> values = new CopyOnWriteArrayList<>();
+
+        /**
+         * The values of the patterns ending with {@code #} after this node.
+         */
+        private final List<V> tailValues = new CopyOnWriteArrayList<>();
+    }
+}
@@ -0,0 +1,366 @@
+package io.websocket.stomp.client.internal;
+
+import io.websocket.stomp.client.DispatchRejectionPolicy;
+import io.websocket.stomp.client.MetricsRegistry;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The dispatcher of the messages of the topics to their handlers.
+ */
+@ThreadSafe
+public abstract class Dispatcher {
+    private final static Logger LOGGER = LoggerFactory.getLogger(Dispatcher.class);
+
+    /**
+     * The minimal time between two logs of the discarded messages.
+     */
+    private final static long DISCARD_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * The lane whose task the current thread runs, if any.
+     */
+    private final static ThreadLocal<Lane> CURRENT_LANE = new ThreadLocal<>();
+
+    private final MetricsRegistry metrics;
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong lastDiscardLogNanos = new AtomicLong(System.nanoTime() - DISCARD_LOG_INTERVAL_NANOS);
+
+    private Dispatcher(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Hands a task to the dispatcher.
+     *
+     * @param key the key of the task, such as its topic. The tasks with the same key run in order of dispatch
+     * @param task the task
+     */
+    public abstract void dispatch(String key, Runnable task);
+
+    /**
+     * Yields the number of tasks waiting to run.
+     * @return the number of tasks
+     */
+    public abstract int queueDepth();
+
+    /**
+     * Waits for a future completed by the transport, such as the reply of a request. If the calling thread runs
+     * a task of a lane, the lane is marked as waiting meanwhile, so that a transport thread that cannot hand
+     * a message to that lane, since it is full, discards the message instead of waiting for a lane that
+     * waits for it.
+     *
+     * @param future the future
+     * @param <V> the type of the result
+     * @return the result
+     * @throws ExecutionException if the future completed exceptionally
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static <V> V await(Future<V> future) throws ExecutionException, InterruptedException {
+        Lane lane = CURRENT_LANE.get();
+        if (lane == null)
+            return future.get();
+
+        boolean awaiting = lane.awaiting;
+        lane.awaiting = true;
+        try {
+            return future.get();
+        }
+        finally {
+            lane.awaiting = awaiting;
+        }
+    }
+
+    /**
+     * Records a message discarded, and logs the number discarded at most once per interval.
+     */
+    private void discarded(String key) {
+        metrics.messageDiscarded(key);
+        long count = discarded.incrementAndGet();
+
+        long now = System.nanoTime();
+        long last = lastDiscardLogNanos.get();
+        if (now - last >= DISCARD_LOG_INTERVAL_NANOS && lastDiscardLogNanos.compareAndSet(last, now))
+            LOGGER.warn("[WsClient] Dispatch queue full: {} messages discarded so far, the last one of {}", count, key);
+    }
+
+    /**
+     * Yields a dispatcher that runs the tasks on the thread that dispatches them.
+     * @return the dispatcher
+     */
+    public static Dispatcher inline() {
+        return new Dispatcher(MetricsRegistry.NOOP) {
+
+            @Override
+            public void dispatch(String key, Runnable task) {
+                runSafely(task);
+            }
+
+            @Override
+            public int queueDepth() {
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Yields a dispatcher that runs the tasks on the given executor, one at a time per lane, in order of dispatch.
+     * Each key is mapped to a lane by its hash code.
+     *
+     * @param executor the executor
+     * @param lanes the number of lanes
+     * @param queueCapacity the maximal number of tasks waiting in each lane
+     * @param rejectionPolicy what to do with a task whose lane is full
+     * @param metrics the registry of the tasks discarded
+     * @return the dispatcher
+     */
+    public static Dispatcher ordered(Executor executor, int lanes, int queueCapacity, DispatchRejectionPolicy rejectionPolicy, MetricsRegistry metrics) {
+        return new OrderedDispatcher(executor, lanes, queueCapacity, rejectionPolicy, metrics);
+    }
+
+    /**
+     * Yields a dispatcher that runs the tasks on the given executor, one at a time per key, in order of dispatch.
+     * Each key gets a lane of its own: this suits an executor that starts a cheap thread per task, such as
+     * a virtual thread per task, so that a blocked task holds up only the tasks of its key.
+     *
+     * @param executor the executor
+     * @param queueCapacity the maximal number of tasks waiting for each key
+     * @param rejectionPolicy what to do with a task whose lane is full
+     * @param metrics the registry of the tasks discarded
+     * @return the dispatcher
+     */
+    public static Dispatcher perKey(Executor executor, int queueCapacity, DispatchRejectionPolicy rejectionPolicy, MetricsRegistry metrics) {
+        return new PerKeyDispatcher(executor, queueCapacity, rejectionPolicy, metrics);
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        }
+        catch (RuntimeException e) {
+            LOGGER.error("[WsClient] Message handler failed", e);
+        }
+    }
+
+    private static class OrderedDispatcher extends Dispatcher {
+        private final Lane[] lanes;
+
+        private OrderedDispatcher(Executor executor, int lanes, int queueCapacity, DispatchRejectionPolicy rejectionPolicy, MetricsRegistry metrics) {
+            super(metrics);
+            this.lanes = new Lane[lanes];
+            for (int i = 0; i < lanes; i++)
+                this.lanes[i] = new Lane(this, executor, new ArrayBlockingQueue<>(queueCapacity), rejectionPolicy);
+        }
+
+        @Override
+        public void dispatch(String key, Runnable task) {
+            lanes[Math.floorMod(key.hashCode(), lanes.length)].submit(key, task);
+        }
+
+        @Override
+        public int queueDepth() {
+            int depth = 0;
+            for (Lane lane: lanes)
+                depth += lane.queue.size();
+
+            return depth;
+        }
+    }
+
+    private static class PerKeyDispatcher extends Dispatcher {
+        private final Executor executor;
+        private final int queueCapacity;
+        private final DispatchRejectionPolicy rejectionPolicy;
+        private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+        private PerKeyDispatcher(Executor executor, int queueCapacity, DispatchRejectionPolicy rejectionPolicy, MetricsRegistry metrics) {
+            super(metrics);
+            this.executor = executor;
+            this.queueCapacity = queueCapacity;
+            this.rejectionPolicy = rejectionPolicy;
+        }
+
+        @Override
+        public void dispatch(String key, Runnable task) {
+            // the queues grow on demand, since there can be many keys
+            lanes.computeIfAbsent(key, _key -> new Lane(this, executor, new LinkedBlockingQueue<>(queueCapacity), rejectionPolicy)).submit(key, task);
+        }
+
+        @Override
+        public int queueDepth() {
+            int depth = 0;
+            for (Lane lane: lanes.values())
+                depth += lane.queue.size();
+
+            return depth;
+        }
+    }
+
+    /**
+     * A queue of tasks, run one at a time on an executor. The lane is owned by a single thread at a time, that runs
+     * its tasks: a thread of the executor, or the dispatching thread with the {@code CALLER_RUNS} policy.
+     */
+    private static class Lane implements Runnable {
+
+        /**
+         * The maximal number of tasks run by a lane before giving its thread back to the executor.
+         */
+        private final static int BATCH_SIZE = 64;
+
+        /**
+         * The time a dispatching thread waits for room in a full lane before checking whether the lane is stuck.
+         */
+        private final static long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+        /**
+         * The time without progress after which a full lane waiting for the transport is deemed to wait
+         * for the dispatching thread itself.
+         */
+        private final static long STUCK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final Dispatcher dispatcher;
+        private final Executor executor;
+        private final BlockingQueue<Runnable> queue;
+        private final DispatchRejectionPolicy rejectionPolicy;
+
+        /**
+         * True while the lane is owned: scheduled on the executor, or drained by a dispatching thread.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * The number of tasks run so far, written by the owner of the lane only.
+         */
+        private volatile long completed;
+
+        /**
+         * True while the task running waits for the transport, as marked by {@link Dispatcher#await(Future)}.
+         */
+        private volatile boolean awaiting;
+
+        private Lane(Dispatcher dispatcher, Executor executor, BlockingQueue<Runnable> queue, DispatchRejectionPolicy rejectionPolicy) {
+            this.dispatcher = dispatcher;
+            this.executor = executor;
+            this.queue = queue;
+            this.rejectionPolicy = rejectionPolicy;
+        }
+
+        private void submit(String key, Runnable task) {
+            if (!queue.offer(task)) {
+                boolean queued;
+                try {
+                    queued = rejectionPolicy != DispatchRejectionPolicy.DISCARD && waitForRoom(key, task);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    queued = false;
+                }
+
+                if (!queued) {
+                    dispatcher.discarded(key);
+                    return;
+                }
+            }
+
+            schedule();
+        }
+
+        /**
+         * Waits until the lane has room for a task, running its queued tasks meanwhile with the {@code CALLER_RUNS}
+         * policy whenever the lane is not owned by a thread of the executor. It gives up if the task running
+         * waits for the transport without progress, since the transport would otherwise wait for it forever.
+         *
+         * @return true if the task was queued, false if it must be discarded
+         */
+        private boolean waitForRoom(String key, Runnable task) throws InterruptedException {
+            long progress = completed;
+            long since = System.nanoTime();
+
+            while (true) {
+                if (rejectionPolicy == DispatchRejectionPolicy.CALLER_RUNS && scheduled.compareAndSet(false, true)) {
+                    try {
+                        runOwned(queue.poll());
+                    }
+                    finally {
+                        scheduled.set(false);
+                    }
+
+                    if (queue.offer(task))
+                        return true;
+                }
+                else if (queue.offer(task, WAIT_NANOS, TimeUnit.NANOSECONDS))
+                    return true;
+
+                long now = System.nanoTime();
+                if (completed != progress) {
+                    progress = completed;
+                    since = now;
+                }
+                else if (awaiting && now - since > STUCK_NANOS) {
+                    LOGGER.error("[WsClient] Dispatch queue of {} full while its handler waits for a reply: the message is discarded", key);
+                    return false;
+                }
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                }
+                catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    LOGGER.info("[WsClient] Dispatch executor rejected the messages: {}", e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Runs a task of the lane, by its owner.
+         */
+        private void runOwned(Runnable task) {
+            if (task == null)
+                return;
+
+            Lane previous = CURRENT_LANE.get();
+            CURRENT_LANE.set(this);
+            try {
+                runSafely(task);
+            }
+            finally {
+                CURRENT_LANE.set(previous);
+                completed++;
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Runnable task = queue.poll();
+                if (task == null)
+                    break;
+
+                runOwned(task);
+            }
+
+            scheduled.set(false);
+
+            // tasks submitted while the lane was being released must not be stranded
+            if (!queue.isEmpty())
+                schedule();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * A payload already encoded by the codec of its content type, that the message converter sends as it is.
+ */
+@Immutable
+public class EncodedPayload {
+    final byte[] bytes;
+
+    public EncodedPayload(byte[] bytes) {
+        this.bytes = bytes;
+    }
+}
@@ -2,28 +2,25 @@ package io.websocket.stomp.client.internal;
 
 
 import io.websocket.stomp.client.exceptions.InternalFailureException;
+import io.websocket.stomp.client.exceptions.NetworkExceptionResponse;
 import io.websocket.stomp.client.models.ErrorModel;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.messaging.simp.stomp.StompFrameHandler;
 import org.springframework.messaging.simp.stomp.StompHeaders;
 
 import java.lang.reflect.Type;
-import java.util.concurrent.BlockingQueue;
 
 /**
- * Class which handles the messages of a websocket topic. It uses a queue to publish and consume the result.
+ * Class which handles the messages of a websocket topic. It delivers each result to the request in flight for the topic.
  * 
  * @param <T> the type of the result
  */
 public class FrameHandler<T> implements StompFrameHandler {
-    private final static Logger LOGGER = LoggerFactory.getLogger(FrameHandler.class);
     private final Class<T> resultTypeClass;
-    private final BlockingQueue<Object> queue;
+    private final SerialRequests requests;
 
-    public FrameHandler(Class<T> resultTypeClass, BlockingQueue<Object> queue) {
+    public FrameHandler(Class<T> resultTypeClass, SerialRequests requests) {
         this.resultTypeClass = resultTypeClass;
-        this.queue = queue;
+        this.requests = requests;
     }
 
     @Override
@@ -33,22 +30,42 @@ public class FrameHandler<T> implements StompFrameHandler {
 
     @Override
     public void handleFrame(StompHeaders headers, Object payload) {
+        requests.complete(toResult(payload, resultTypeClass), headers.getContentLength());
+    }
 
-        try {
-            if (payload == null)
-                queue.put(new ErrorModel(new InternalFailureException("Received a null payload")));
-            else if (payload instanceof GsonMessageConverter.NullObject)
-                queue.put(new GsonMessageConverter.NullObject());
-            else if (payload instanceof ErrorModel)
-                queue.put(payload);
-            else if (payload.getClass() != resultTypeClass)
-                queue.put(new ErrorModel(new InternalFailureException(String.format("Unexpected payload type [%s]: expected [%s]" + payload.getClass().getName(), resultTypeClass))));
-            else
-                queue.put(payload);
-        }
-        catch (Exception e) {
-            LOGGER.info("[WsClient] Queue put error: " + e.getMessage());
-        }
+    /**
+     * Yields the result to deliver for a received payload: the payload itself if it is of the expected type,
+     * or an {@link ErrorModel} otherwise.
+     *
+     * @param payload the received payload
+     * @param resultTypeClass the expected result type class
+     * @return the result
+     */
+    static Object toResult(Object payload, Class<?> resultTypeClass) {
+        if (payload == null)
+            return new ErrorModel(new InternalFailureException("Received a null payload"));
+        else if (payload instanceof CodecMessageConverter.NullObject || payload instanceof ErrorModel)
+            return payload;
+        else if (payload.getClass() != resultTypeClass)
+            return new ErrorModel(new InternalFailureException(String.format("Unexpected payload type [%s]: expected [%s]", payload.getClass().getName(), resultTypeClass.getName())));
+        else
+            return payload;
+    }
 
+    /**
+     * Completes the future of a request with a result: exceptionally with a {@link NetworkExceptionResponse}
+     * if the result is an {@link ErrorModel}, with {@code null} if the result is a {@code null} object.
+     *
+     * @param future the future of the request
+     * @param result the result, as yielded by {@link #toResult(Object, Class)}
+     * @param resultBytes the size of the encoded result, or -1 if it is unknown
+     */
+    static void complete(ReplyFuture future, Object result, long resultBytes) {
+        if (result instanceof ErrorModel)
+            future.completeExceptionally(new NetworkExceptionResponse((ErrorModel) result));
+        else if (result instanceof CodecMessageConverter.NullObject)
+            future.complete(null, resultBytes);
+        else
+            future.complete(result, resultBytes);
     }
-}
\ No newline at end of file
+}
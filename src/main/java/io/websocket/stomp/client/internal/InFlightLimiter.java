@@ -0,0 +1,130 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A limiter of the number of requests in flight at the same time. The requests beyond the limit
+ * wait in a queue, without blocking any thread, and are started as soon as a slot is released.
+ */
+@ThreadSafe
+public class InFlightLimiter {
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @GuardedBy("lock")
+    private int inFlight;
+
+    @GuardedBy("lock")
+    private final Queue<Waiting> waiting = new ArrayDeque<>();
+
+    /**
+     * Builds a limiter.
+     * @param capacity the maximal number of requests in flight at the same time
+     */
+    public InFlightLimiter(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Starts the given request as soon as a slot is available. If the request gets started,
+     * whoever completes it must call {@link #release()} exactly once.
+     *
+     * @param request the future result of the request, failed by {@link #failAll(Throwable)} while the request waits
+     * @param admission the request to start
+     */
+    public void submit(CompletableFuture<?> request, Admission admission) {
+        lock.lock();
+        try {
+            if (inFlight >= capacity) {
+                waiting.add(new Waiting(request, admission));
+                return;
+            }
+
+            inFlight++;
+        }
+        finally {
+            lock.unlock();
+        }
+
+        if (!admission.start())
+            release();
+    }
+
+    /**
+     * Releases the slot of a completed request, starting the next waiting request, if any.
+     */
+    public void release() {
+        while (true) {
+            Waiting next;
+            lock.lock();
+            try {
+                next = waiting.poll();
+                if (next == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+
+            // the slot passes to the next request, unless it does not need it anymore
+            if (next.admission.start())
+                return;
+        }
+    }
+
+    /**
+     * Completes exceptionally the requests waiting for a slot, which will never start.
+     * The requests in flight keep their slots.
+     *
+     * @param cause the cause of the failure
+     */
+    public void failAll(Throwable cause) {
+        List<Waiting> failed;
+        lock.lock();
+        try {
+            failed = new ArrayList<>(waiting);
+            waiting.clear();
+        }
+        finally {
+            lock.unlock();
+        }
+
+        failed.forEach(request -> request.result.completeExceptionally(cause));
+    }
+
+    /**
+     * A request in the queue.
+     */
+    private static class Waiting {
+        private final CompletableFuture<?> result;
+        private final Admission admission;
+
+        private Waiting(CompletableFuture<?> result, Admission admission) {
+            this.result = result;
+            this.admission = admission;
+        }
+    }
+
+    /**
+     * A request waiting for a slot.
+     */
+    @FunctionalInterface
+    public interface Admission {
+
+        /**
+         * Starts the request, now that it holds a slot.
+         * @return true if the request got started and holds the slot, false if it gives the slot back
+         */
+        boolean start();
+    }
+}
@@ -0,0 +1,186 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * The last values received per destination, and optionally per key within a destination, so that they can be
+ * looked up without a round trip to the server. The cache holds a bounded number of values: the least recently
+ * used one is evicted when it is full, and the values older than the time to live are forgotten.
+ */
+@ThreadSafe
+public class LastValueCache {
+    private final long ttlNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The values, from the least recently used to the most recently used one.
+     */
+    @GuardedBy("lock")
+    private final LinkedHashMap<Key, Entry> entries;
+
+    /**
+     * Builds a cache.
+     *
+     * @param capacity the maximal number of values
+     * @param ttlMillis the time a value is kept, in milliseconds, or 0 to keep it until it is evicted
+     */
+    public LastValueCache(int capacity, long ttlMillis) {
+        this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1_000_000 : Long.MAX_VALUE;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Records the last value of a destination, or of a key within a destination.
+     *
+     * @param destination the destination
+     * @param key the key of the value within the destination, or {@code null} for the value of the destination
+     * @param value the value
+     */
+    public void put(String destination, String key, Object value) {
+        lock.lock();
+        try {
+            entries.put(new Key(destination, key), new Entry(value, System.nanoTime()));
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Yields the last value of a destination, or of a key within a destination.
+     *
+     * @param destination the destination
+     * @param key the key of the value within the destination, or {@code null} for the value of the destination
+     * @return the value, or {@code null} if none was received or it expired
+     */
+    public Object get(String destination, String key) {
+        Key cacheKey = new Key(destination, key);
+        long now = System.nanoTime();
+
+        lock.lock();
+        try {
+            Entry entry = entries.get(cacheKey);
+            if (entry == null)
+                return null;
+
+            if (now - entry.nanos > ttlNanos) {
+                entries.remove(cacheKey);
+                return null;
+            }
+
+            return entry.value;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Yields the last values of the destinations that match a filter, and of all their keys, from the least
+     * recently used to the most recently used one.
+     *
+     * @param destinations the filter of the destinations
+     * @return the values, not expired
+     */
+    public List<Object> values(Predicate<String> destinations) {
+        List<Object> values = new ArrayList<>();
+        long now = System.nanoTime();
+
+        lock.lock();
+        try {
+            Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, Entry> entry = iterator.next();
+                if (now - entry.getValue().nanos > ttlNanos)
+                    iterator.remove();
+                else if (destinations.test(entry.getKey().destination))
+                    values.add(entry.getValue().value);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+
+        return values;
+    }
+
+    /**
+     * Yields the number of values held, including those expired but not forgotten yet.
+     * @return the number of values
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets all values.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Immutable
+    private static class Key {
+        private final String destination;
+        private final String key;
+
+        private Key(String destination, String key) {
+            this.destination = destination;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+
+            Key that = (Key) other;
+            return destination.equals(that.destination) && Objects.equals(key, that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * destination.hashCode() + Objects.hashCode(key);
+        }
+    }
+
+    @Immutable
+    private static class Entry {
+        private final Object value;
+        private final long nanos;
+
+        private Entry(Object value, long nanos) {
+            this.value = value;
+            this.nanos = nanos;
+        }
+    }
+}
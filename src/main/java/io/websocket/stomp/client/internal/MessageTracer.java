@@ -0,0 +1,82 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The tracer of a sample of the messages of a client, logged with structured {@code key=value} fields
+ * through the {@code io.websocket.stomp.client.trace} logger. When disabled, it costs a field read per message;
+ * when enabled, the messages not sampled cost a random draw, without allocation nor contention.
+ */
+@ThreadSafe
+public class MessageTracer {
+    private final static Logger LOGGER = LoggerFactory.getLogger("io.websocket.stomp.client.trace");
+
+    /**
+     * The tracer that traces no message.
+     */
+    public final static MessageTracer DISABLED = new MessageTracer(0);
+
+    private final int sampleRate;
+
+    /**
+     * Builds a tracer.
+     * @param sampleRate the tracer traces one message in {@code sampleRate} on average; 0 disables tracing
+     */
+    public MessageTracer(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Traces a message sent, if sampled.
+     *
+     * @param destination the destination of the message
+     * @param sessionId the session of the message, possibly {@code null}
+     * @param bytes the size of the encoded payload
+     * @param encodeNanos the time spent encoding the payload, in nanoseconds
+     */
+    public void sent(String destination, String sessionId, int bytes, long encodeNanos) {
+        if (sampled())
+            LOGGER.info("[WsClient] event=send destination={} session={} bytes={} encodeMicros={}", destination, sessionId, bytes, encodeNanos / 1000);
+    }
+
+    /**
+     * Traces a message received, if sampled.
+     *
+     * @param destination the destination of the message
+     * @param sessionId the session of the message, possibly {@code null}
+     * @param bytes the size of the encoded payload
+     * @param decodeNanos the time spent decoding the payload, in nanoseconds
+     */
+    public void received(String destination, String sessionId, int bytes, long decodeNanos) {
+        if (sampled())
+            LOGGER.info("[WsClient] event=receive destination={} session={} bytes={} decodeMicros={}", destination, sessionId, bytes, decodeNanos / 1000);
+    }
+
+    /**
+     * Traces the completion of a request, if sampled.
+     *
+     * @param topic the topic of the request
+     * @param nanos the time from the request to its completion, in nanoseconds
+     * @param success true if the request got its reply
+     */
+    public void requestCompleted(String topic, long nanos, boolean success) {
+        if (sampled())
+            LOGGER.info("[WsClient] event=request destination={} latencyMicros={} success={}", topic, nanos / 1000, success);
+    }
+
+    /**
+     * Determines if requests should be traced, so that their latency is worth measuring.
+     * @return true if tracing is enabled
+     */
+    public boolean isEnabled() {
+        return sampleRate > 0;
+    }
+
+    private boolean sampled() {
+        return sampleRate > 0 && (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0) && LOGGER.isInfoEnabled();
+    }
+}
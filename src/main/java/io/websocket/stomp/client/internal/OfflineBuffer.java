@@ -0,0 +1,396 @@
+package io.websocket.stomp.client.internal;
+
+import io.websocket.stomp.client.OfflineBufferMetrics;
+import io.websocket.stomp.client.OfflineOverflowPolicy;
+import io.websocket.stomp.client.exceptions.ConnectionLostException;
+import io.websocket.stomp.client.exceptions.InternalFailureException;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A bounded buffer of the messages sent while a client is disconnected, replayed in order once it reconnects.
+ * The messages are kept in memory, with their payload already encoded; when the memory is full, they can
+ * spill to a memory-mapped file. While the buffer is not empty, the new messages are buffered too, behind the others.
+ * The {@link OfflineOverflowPolicy#DROP_OLDEST} policy drops the oldest messages of the whole buffer, in memory first,
+ * then in the spill file; the messages of the spill file then move to the memory freed, so that the spill file
+ * keeps holding the newest messages only.
+ */
+@ThreadSafe
+public class OfflineBuffer implements Closeable {
+    private final static Logger LOGGER = LoggerFactory.getLogger(OfflineBuffer.class);
+
+    /**
+     * An estimate of the memory taken by a buffered message, besides its headers and payload.
+     */
+    private final static int ENTRY_OVERHEAD = 64;
+
+    private final long maxBytes;
+    private final OfflineOverflowPolicy overflowPolicy;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @GuardedBy("lock")
+    private final ArrayDeque<Entry> memory = new ArrayDeque<>();
+
+    @GuardedBy("lock")
+    private long memoryBytes;
+
+    /**
+     * The spill file, if any. It holds messages only once the memory is full, so that its messages come after those in memory.
+     */
+    @GuardedBy("lock")
+    private final SpillFile spill;
+
+    /**
+     * True while a thread replays the buffered messages.
+     */
+    @GuardedBy("lock")
+    private boolean draining;
+
+    /**
+     * The message being replayed, still at the head of the buffer, or {@code null} if none.
+     */
+    @GuardedBy("lock")
+    private Entry replaying;
+
+    /**
+     * True if the message being replayed was dropped meanwhile, so that it is no longer at the head of the buffer.
+     */
+    @GuardedBy("lock")
+    private boolean replayingDropped;
+
+    @GuardedBy("lock")
+    private long dropped;
+
+    @GuardedBy("lock")
+    private long replayed;
+
+    /**
+     * Builds a buffer.
+     *
+     * @param maxBytes the maximal size of the messages buffered in memory
+     * @param overflowPolicy what to do with a new message when the buffer is full
+     * @param spillPath the spill file, or {@code null} for none
+     * @param spillBytes the size of the spill file
+     * @throws IOException if the spill file cannot be created
+     */
+    public OfflineBuffer(long maxBytes, OfflineOverflowPolicy overflowPolicy, Path spillPath, int spillBytes) throws IOException {
+        this.maxBytes = maxBytes;
+        this.overflowPolicy = overflowPolicy;
+        this.spill = spillPath != null ? new SpillFile(spillPath, spillBytes) : null;
+    }
+
+    /**
+     * Determines if the messages can be sent directly, since no message is buffered or being replayed.
+     * @return true if the buffer is empty and idle
+     */
+    public boolean isIdle() {
+        lock.lock();
+        try {
+            return !draining && memory.isEmpty() && (spill == null || spill.isEmpty());
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Buffers a message, applying the overflow policy if the buffer is full.
+     *
+     * @param headers the headers of the message
+     * @param payload the encoded payload of the message
+     * @throws ConnectionLostException if the buffer is full and the overflow policy is {@link OfflineOverflowPolicy#FAIL}
+     */
+    public void offer(StompHeaders headers, byte[] payload) {
+        lock.lock();
+        try {
+            Entry entry = new Entry(copyOf(headers), payload);
+
+            if ((spill == null || spill.isEmpty()) && fitsInMemory(entry)) {
+                addToMemory(entry);
+                return;
+            }
+
+            if (spill != null) {
+                byte[] record = entry.toRecord();
+                if (spill.offer(record))
+                    return;
+
+                if (overflowPolicy == OfflineOverflowPolicy.DROP_OLDEST) {
+                    while (!spill.offer(record)) {
+                        if (memory.isEmpty() && spill.isEmpty()) {
+                            // larger than the spill file
+                            dropped++;
+                            return;
+                        }
+
+                        dropOldest();
+                    }
+
+                    return;
+                }
+            }
+            else if (overflowPolicy == OfflineOverflowPolicy.DROP_OLDEST) {
+                while (!memory.isEmpty() && !fitsInMemory(entry))
+                    dropOldest();
+
+                if (fitsInMemory(entry))
+                    addToMemory(entry);
+                else
+                    dropped++;
+
+                return;
+            }
+
+            if (overflowPolicy == OfflineOverflowPolicy.FAIL)
+                throw new ConnectionLostException("Not connected and the offline buffer is full");
+
+            dropped++;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replays the buffered messages in order, unless another thread is already replaying them.
+     * The replay stops at the first message that cannot be sent, which stays at the head of the buffer.
+     *
+     * @param sender the sender of the messages, that throws an exception if a message cannot be sent
+     */
+    public void drain(Consumer<Entry> sender) {
+        lock.lock();
+        try {
+            if (draining)
+                return;
+
+            draining = true;
+        }
+        finally {
+            lock.unlock();
+        }
+
+        try {
+            while (true) {
+                Entry next;
+                lock.lock();
+                try {
+                    next = peek();
+                    if (next == null) {
+                        draining = false;
+                        return;
+                    }
+
+                    replaying = next;
+                    replayingDropped = false;
+                }
+                finally {
+                    lock.unlock();
+                }
+
+                try {
+                    sender.accept(next);
+                }
+                catch (RuntimeException e) {
+                    LOGGER.info("[WsClient] Stopped the replay of the offline messages: " + e.getMessage());
+                    stopDraining();
+                    return;
+                }
+
+                lock.lock();
+                try {
+                    if (!replayingDropped)
+                        remove();
+
+                    replaying = null;
+                    replayed++;
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+        }
+        catch (RuntimeException | Error e) {
+            stopDraining();
+            throw e;
+        }
+    }
+
+    /**
+     * Yields a snapshot of the state of this buffer.
+     * @return the snapshot
+     */
+    public OfflineBufferMetrics metrics() {
+        lock.lock();
+        try {
+            int spilled = spill != null ? spill.size() : 0;
+            long spilledBytes = spill != null ? spill.usedBytes() : 0;
+            return new OfflineBufferMetrics(memory.size() + spilled, memoryBytes, spilledBytes, dropped, replayed);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            memory.clear();
+            memoryBytes = 0;
+
+            if (spill != null)
+                spill.close();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void stopDraining() {
+        lock.lock();
+        try {
+            draining = false;
+            replaying = null;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @GuardedBy("lock")
+    private boolean fitsInMemory(Entry entry) {
+        return memoryBytes + entry.size <= maxBytes;
+    }
+
+    @GuardedBy("lock")
+    private void addToMemory(Entry entry) {
+        memory.add(entry);
+        memoryBytes += entry.size;
+    }
+
+    @GuardedBy("lock")
+    private Entry peek() {
+        Entry entry = memory.peek();
+        if (entry == null && spill != null) {
+            byte[] record = spill.peek();
+            if (record != null)
+                entry = Entry.fromRecord(record);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Drops the oldest message, in memory or else in the spill file, then moves the oldest messages of the spill
+     * file to the memory freed, as long as they fit, so that the messages in memory stay the oldest ones.
+     */
+    @GuardedBy("lock")
+    private void dropOldest() {
+        if (replaying != null && !replayingDropped)
+            replayingDropped = true;
+
+        remove();
+        dropped++;
+
+        while (spill != null && !spill.isEmpty()) {
+            Entry promoted = Entry.fromRecord(spill.peek());
+            if (!fitsInMemory(promoted))
+                break;
+
+            spill.poll();
+            addToMemory(promoted);
+        }
+    }
+
+    @GuardedBy("lock")
+    private void remove() {
+        Entry entry = memory.poll();
+        if (entry != null)
+            memoryBytes -= entry.size;
+        else if (spill != null)
+            spill.poll();
+    }
+
+    private static StompHeaders copyOf(StompHeaders headers) {
+        StompHeaders copy = new StompHeaders();
+        copy.putAll(headers);
+        return copy;
+    }
+
+    /**
+     * A buffered message.
+     */
+    public static class Entry {
+        public final StompHeaders headers;
+        public final byte[] payload;
+        private final long size;
+
+        private Entry(StompHeaders headers, byte[] payload) {
+            this.headers = headers;
+            this.payload = payload;
+
+            long size = ENTRY_OVERHEAD + payload.length;
+            for (Map.Entry<String, List<String>> header: headers.entrySet())
+                for (String value: header.getValue())
+                    size += header.getKey().length() + value.length();
+
+            this.size = size;
+        }
+
+        private byte[] toRecord() {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 128);
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(headers.size());
+                for (Map.Entry<String, List<String>> header: headers.entrySet()) {
+                    out.writeUTF(header.getKey());
+                    out.writeInt(header.getValue().size());
+                    for (String value: header.getValue())
+                        out.writeUTF(value);
+                }
+
+                out.writeInt(payload.length);
+                out.write(payload);
+                return bytes.toByteArray();
+            }
+            catch (IOException e) {
+                throw InternalFailureException.of(e);
+            }
+        }
+
+        private static Entry fromRecord(byte[] record) {
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+                StompHeaders headers = new StompHeaders();
+                for (int headerCount = in.readInt(); headerCount > 0; headerCount--) {
+                    String name = in.readUTF();
+                    for (int valueCount = in.readInt(); valueCount > 0; valueCount--)
+                        headers.add(name, in.readUTF());
+                }
+
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                return new Entry(headers, payload);
+            }
+            catch (IOException e) {
+                throw InternalFailureException.of(e);
+            }
+        }
+    }
+}
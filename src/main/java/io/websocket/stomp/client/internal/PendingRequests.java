@@ -0,0 +1,96 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The table of the pipelined requests still waiting for their reply, indexed by correlation id.
+ */
+@ThreadSafe
+public class PendingRequests {
+
+    /**
+     * The name of the STOMP header that carries the correlation id of a request and of its reply.
+     */
+    public final static String CORRELATION_ID_HEADER = "correlation-id";
+
+    private final ConcurrentHashMap<String, PendingRequest> requests = new ConcurrentHashMap<>();
+    private final AtomicLong nextCorrelationId = new AtomicLong();
+
+    /**
+     * Registers a new request, waiting for a result of the given type.
+     *
+     * @param resultTypeClass the result type class
+     * @param result the future to complete with the result
+     * @return the pending request, with a fresh correlation id
+     */
+    public PendingRequest register(Class<?> resultTypeClass, ReplyFuture result) {
+        PendingRequest request = new PendingRequest(Long.toString(nextCorrelationId.incrementAndGet()), resultTypeClass, result);
+        requests.put(request.correlationId, request);
+        return request;
+    }
+
+    /**
+     * Yields the pending request with the given correlation id, if any.
+     *
+     * @param correlationId the correlation id, possibly {@code null}
+     * @return the pending request, or {@code null} if it does not exist
+     */
+    public PendingRequest get(String correlationId) {
+        return correlationId != null ? requests.get(correlationId) : null;
+    }
+
+    /**
+     * Completes the request with the given correlation id and removes it from this table.
+     *
+     * @param correlationId the correlation id
+     * @param result the result of the request
+     * @param resultBytes the size of the encoded result, or -1 if it is unknown
+     * @return true if the request was pending, false otherwise
+     */
+    public boolean complete(String correlationId, Object result, long resultBytes) {
+        PendingRequest request = correlationId != null ? requests.remove(correlationId) : null;
+        if (request == null)
+            return false;
+
+        FrameHandler.complete(request.result, result, resultBytes);
+        return true;
+    }
+
+    /**
+     * Removes a request from this table, without completing it.
+     * @param correlationId the correlation id of the request
+     */
+    public void remove(String correlationId) {
+        requests.remove(correlationId);
+    }
+
+    /**
+     * Completes exceptionally all pending requests and removes them from this table.
+     * @param cause the cause of the failure
+     */
+    public void failAll(Throwable cause) {
+        for (String correlationId: requests.keySet()) {
+            PendingRequest request = requests.remove(correlationId);
+            if (request != null)
+                request.result.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * A request waiting for its reply.
+     */
+    public static class PendingRequest {
+        public final String correlationId;
+        public final Class<?> resultTypeClass;
+        public final ReplyFuture result;
+
+        private PendingRequest(String correlationId, Class<?> resultTypeClass, ReplyFuture result) {
+            this.correlationId = correlationId;
+            this.resultTypeClass = resultTypeClass;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The future reply to a request, that also tells the size of the reply as it was received, still encoded.
+ */
+@ThreadSafe
+public class ReplyFuture extends CompletableFuture<Object> {
+    private volatile long replyBytes = -1;
+
+    /**
+     * Completes this future with a reply, unless it is already completed.
+     *
+     * @param reply the decoded reply
+     * @param replyBytes the size of the encoded reply, or -1 if it is unknown
+     * @return true if this future got completed by the call
+     */
+    public boolean complete(Object reply, long replyBytes) {
+        // set before the completion, so that the dependent actions see it
+        this.replyBytes = replyBytes;
+        return complete(reply);
+    }
+
+    /**
+     * Yields the size of the encoded reply.
+     * @return the size in bytes, or -1 if it is unknown or the reply has not arrived
+     */
+    public long replyBytes() {
+        return replyBytes;
+    }
+}
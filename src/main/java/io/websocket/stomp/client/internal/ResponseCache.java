@@ -0,0 +1,266 @@
+package io.websocket.stomp.client.internal;
+
+import io.websocket.stomp.client.MetricsRegistry;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The responses of idempotent requests, per topic, result type and encoded request payload, so that identical
+ * requests are answered from memory. The concurrent identical requests share the same request in flight.
+ * The cache holds a bounded number of responses, of a bounded total size: the least recently used ones are
+ * evicted when it is full, and the responses older than their time to live are forgotten. The failures are
+ * not cached.
+ * <p>
+ * The responses are shared by all the callers of the same request, hence must not be modified.
+ */
+@ThreadSafe
+public class ResponseCache {
+    private final int maxEntries;
+    private final long maxBytes;
+    private final MetricsRegistry metrics;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The responses, from the least recently used to the most recently used one.
+     */
+    @GuardedBy("lock")
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The total size of the responses and of their requests.
+     */
+    @GuardedBy("lock")
+    private long bytes;
+
+    /**
+     * The requests in flight, shared by the identical requests issued meanwhile.
+     */
+    private final ConcurrentHashMap<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Builds a cache.
+     *
+     * @param maxEntries the maximal number of responses
+     * @param maxBytes the maximal total size of the responses and of their requests
+     * @param metrics the registry of the hits and misses
+     */
+    public ResponseCache(int maxEntries, long maxBytes, MetricsRegistry metrics) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Yields the response of a request: the cached one, that of the identical request in flight, or else
+     * that of a new request, then cached. Cancelling the returned future does not cancel a request in flight.
+     *
+     * @param topic the topic of the request
+     * @param resultType the type of the response
+     * @param request the encoded payload of the request
+     * @param ttlMillis the time the response is kept, in milliseconds; {@link Long#MAX_VALUE} keeps it until evicted
+     * @param sender the sender of a new request, yielding its response and its size as received
+     * @return the future response
+     */
+    public CompletableFuture<Object> get(String topic, Class<?> resultType, byte[] request, long ttlMillis,
+                                         Supplier<ReplyFuture> sender) {
+        Key key = new Key(topic, resultType, request);
+
+        Object cached = lookup(key);
+        if (cached != null) {
+            metrics.responseCacheLookup(topic, true);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<Object> response = new CompletableFuture<>();
+        CompletableFuture<Object> shared = inFlight.putIfAbsent(key, response);
+        metrics.responseCacheLookup(topic, shared != null);
+        if (shared != null)
+            return copyOf(shared);
+
+        ReplyFuture sent;
+        try {
+            sent = sender.get();
+        }
+        catch (RuntimeException e) {
+            sent = new ReplyFuture();
+            sent.completeExceptionally(e);
+        }
+
+        ReplyFuture reply = sent;
+        sent.whenComplete((value, throwable) -> {
+            // cached before the request leaves the flight, so that the identical requests meanwhile hit either
+            if (throwable == null && value != null)
+                store(key, value, ttlMillis, Math.max(0, reply.replyBytes()));
+
+            inFlight.remove(key, response);
+            if (throwable != null)
+                response.completeExceptionally(throwable);
+            else
+                response.complete(value);
+        });
+
+        return copyOf(response);
+    }
+
+    /**
+     * Yields the number of responses held, including those expired but not forgotten yet.
+     * @return the number of responses
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Yields the total size of the responses held and of their requests.
+     * @return the size in bytes
+     */
+    public long bytes() {
+        lock.lock();
+        try {
+            return bytes;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets all responses. The requests in flight still complete their callers.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            bytes = 0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private Object lookup(Key key) {
+        long now = System.nanoTime();
+
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null)
+                return null;
+
+            if (now - entry.storedNanos > entry.ttlNanos) {
+                entries.remove(key);
+                bytes -= entry.bytes;
+                return null;
+            }
+
+            return entry.value;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores a response, sized by the request and by the response as received, so that nothing is encoded again.
+     */
+    private void store(Key key, Object value, long ttlMillis, long responseBytes) {
+        long size = key.request.length + responseBytes;
+        if (size > maxBytes)
+            return;
+
+        // the time to live saturates rather than overflows, and the age of an entry is compared to it
+        Entry entry = new Entry(value, size, System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+
+        lock.lock();
+        try {
+            Entry replaced = entries.put(key, entry);
+            bytes += size - (replaced != null ? replaced.bytes : 0);
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || bytes > maxBytes) {
+                bytes -= eldest.next().bytes;
+                eldest.remove();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Yields a future completed as the given one, with the same exception if any, that can be cancelled
+     * on its own.
+     */
+    private static CompletableFuture<Object> copyOf(CompletableFuture<Object> future) {
+        CompletableFuture<Object> copy = new CompletableFuture<>();
+        future.whenComplete((value, throwable) -> {
+            if (throwable != null)
+                copy.completeExceptionally(throwable);
+            else
+                copy.complete(value);
+        });
+
+        return copy;
+    }
+
+    @Immutable
+    private static class Key {
+        private final String topic;
+        private final Class<?> resultType;
+        private final byte[] request;
+        private final int hash;
+
+        private Key(String topic, Class<?> resultType, byte[] request) {
+            this.topic = topic;
+            this.resultType = resultType;
+            this.request = request;
+            this.hash = 31 * (31 * topic.hashCode() + resultType.hashCode()) + Arrays.hashCode(request);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+
+            Key that = (Key) other;
+            return hash == that.hash && topic.equals(that.topic) && resultType == that.resultType && Arrays.equals(request, that.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @Immutable
+    private static class Entry {
+        private final Object value;
+        private final long bytes;
+        private final long storedNanos;
+        private final long ttlNanos;
+
+        private Entry(Object value, long bytes, long storedNanos, long ttlNanos) {
+            this.value = value;
+            this.bytes = bytes;
+            this.storedNanos = storedNanos;
+            this.ttlNanos = ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The requests for a topic whose replies do not carry a correlation id. At most one of them is in flight
+ * at a time, so that the next reply of the topic belongs to it; the others wait, without blocking any thread.
+ * A request in flight keeps its slot until its reply arrives, even if its caller stopped waiting for it,
+ * so that its late reply is not taken for the reply of the next request. A reply that never comes holds
+ * the slot for the reply timeout at most: the request then fails with a {@link TimeoutException}, and
+ * the next request goes.
+ */
+@ThreadSafe
+public class SerialRequests {
+    private final static Logger LOGGER = LoggerFactory.getLogger(SerialRequests.class);
+    private final InFlightLimiter limiter = new InFlightLimiter(1);
+    private final AtomicReference<InFlight> current = new AtomicReference<>();
+    private final ScheduledExecutorService scheduler;
+    private final long replyTimeoutMillis;
+
+    /**
+     * Builds the requests of a topic.
+     *
+     * @param scheduler the scheduler of the reply timeouts
+     * @param replyTimeoutMillis the maximal time a request holds the topic waiting for its reply, in milliseconds
+     */
+    public SerialRequests(ScheduledExecutorService scheduler, long replyTimeoutMillis) {
+        this.scheduler = scheduler;
+        this.replyTimeoutMillis = replyTimeoutMillis;
+    }
+
+    /**
+     * Sends a request as soon as no other request is in flight.
+     *
+     * @param result the future completed with the reply to the request
+     * @param sender the action that sends the request
+     */
+    public void submit(ReplyFuture result, Runnable sender) {
+        limiter.submit(result, () -> {
+            if (result.isDone())
+                return false;
+
+            InFlight request = new InFlight(result);
+            current.set(request);
+            try {
+                sender.run();
+            }
+            catch (RuntimeException e) {
+                current.compareAndSet(request, null);
+                result.completeExceptionally(e);
+                return false;
+            }
+
+            // a timer that fires after the reply finds the slot released, and does nothing
+            request.timer = scheduler.schedule(() -> expire(request), replyTimeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        });
+    }
+
+    /**
+     * Delivers a reply to the request in flight and lets the next request go. The reply of a request whose
+     * caller stopped waiting is dropped.
+     *
+     * @param reply the reply
+     * @param replyBytes the size of the encoded reply, or -1 if it is unknown
+     */
+    public void complete(Object reply, long replyBytes) {
+        InFlight request = current.getAndSet(null);
+        if (request == null) {
+            LOGGER.info("[WsClient] Dropped reply with no request in flight");
+            return;
+        }
+
+        request.cancelTimer();
+        FrameHandler.complete(request.result, reply, replyBytes);
+        limiter.release();
+    }
+
+    /**
+     * Fails the request in flight whose reply did not arrive in time, and lets the next request go.
+     */
+    private void expire(InFlight request) {
+        if (!current.compareAndSet(request, null))
+            return;
+
+        LOGGER.info("[WsClient] No reply within {} ms: the topic takes the next request", replyTimeoutMillis);
+        request.result.completeExceptionally(new TimeoutException("No reply within " + replyTimeoutMillis + " ms"));
+        limiter.release();
+    }
+
+    /**
+     * Completes exceptionally the request in flight, whose reply will never arrive, and lets the next request go.
+     * @param cause the cause of the failure
+     */
+    public void failInFlight(Throwable cause) {
+        InFlight request = current.getAndSet(null);
+        if (request == null)
+            return;
+
+        request.cancelTimer();
+        request.result.completeExceptionally(cause);
+        limiter.release();
+    }
+
+    /**
+     * Completes exceptionally the request in flight and the requests waiting for it, none of which will get a reply.
+     * @param cause the cause of the failure
+     */
+    public void failAll(Throwable cause) {
+        // the waiting requests first, so that the release of the slot does not send any of them
+        limiter.failAll(cause);
+        failInFlight(cause);
+    }
+
+    /**
+     * A request in flight.
+     */
+    private static class InFlight {
+        private final ReplyFuture result;
+        private volatile ScheduledFuture<?> timer;
+
+        private InFlight(ReplyFuture result) {
+            this.result = result;
+        }
+
+        private void cancelTimer() {
+            ScheduledFuture<?> timer = this.timer;
+            if (timer != null)
+                timer.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.net.URI;
+
+/**
+ * A websocket client whose sessions are seen by their handlers as {@link SingleWriterWebSocketSession}s,
+ * so that the handlers can send messages from many threads without locking.
+ * The outbound frames of the sessions are coalesced as specified by a batching policy, and their inbound messages
+ * are assembled in buffers of the given size.
+ */
+@ThreadSafe
+public class SingleWriterWebSocketClient implements WebSocketClient {
+    private final WebSocketClient delegate;
+    private final Batching batching;
+    private final int messageBufferBytes;
+
+    /**
+     * The session opened last.
+     */
+    private volatile SingleWriterWebSocketSession current;
+
+    public SingleWriterWebSocketClient(WebSocketClient delegate, Batching batching, int messageBufferBytes) {
+        this.delegate = delegate;
+        this.batching = batching;
+        this.messageBufferBytes = messageBufferBytes;
+    }
+
+    /**
+     * Yields the session opened last.
+     * @return the session, or {@code null} if none
+     */
+    public SingleWriterWebSocketSession current() {
+        return current;
+    }
+
+    /**
+     * Writes the pending messages of the session opened last, if any.
+     */
+    public void flush() {
+        SingleWriterWebSocketSession session = current;
+        if (session != null)
+            session.flush();
+    }
+
+    @Override
+    public ListenableFuture<WebSocketSession> doHandshake(WebSocketHandler webSocketHandler, String uriTemplate, Object... uriVariables) {
+        return delegate.doHandshake(new SingleWriterHandler(webSocketHandler), uriTemplate, uriVariables);
+    }
+
+    @Override
+    public ListenableFuture<WebSocketSession> doHandshake(WebSocketHandler webSocketHandler, WebSocketHttpHeaders headers, URI uri) {
+        return delegate.doHandshake(new SingleWriterHandler(webSocketHandler), headers, uri);
+    }
+
+    /**
+     * The handler of a single connection, that hands the same decorated session to the decorated handler.
+     */
+    private class SingleWriterHandler extends WebSocketHandlerDecorator {
+        private volatile SingleWriterWebSocketSession session;
+
+        private SingleWriterHandler(WebSocketHandler delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+            // before the first message, whose buffer is allocated with the size of the session
+            session.setTextMessageSizeLimit(messageBufferBytes);
+            session.setBinaryMessageSizeLimit(messageBufferBytes);
+            super.afterConnectionEstablished(decorate(session));
+        }
+
+        @Override
+        public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+            SingleWriterWebSocketSession decorated = decorate(session);
+            decorated.markRead();
+            super.handleMessage(decorated, message);
+        }
+
+        @Override
+        public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+            super.handleTransportError(decorate(session), exception);
+        }
+
+        @Override
+        public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+            super.afterConnectionClosed(decorate(session), closeStatus);
+        }
+
+        private SingleWriterWebSocketSession decorate(WebSocketSession session) {
+            SingleWriterWebSocketSession decorated = this.session;
+            if (decorated == null || decorated.getDelegate() != session) {
+                decorated = new SingleWriterWebSocketSession(session, batching);
+                this.session = decorated;
+                current = decorated;
+            }
+
+            return decorated;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A websocket session whose outbound messages are written by one thread at a time, since the underlying
+ * session does not support concurrent writes. The messages go through a lock-free queue: the thread that finds
+ * the queue idle becomes its writer and drains it, while the other threads only enqueue their messages and return,
+ * so that concurrent producers never block each other.
+ * <p>
+ * With batching enabled, the consecutive messages of the same kind, text or binary, are coalesced into a single
+ * websocket message, that the STOMP decoder of the server splits back into frames. A batch is written when it reaches
+ * the maximal size or number of frames, when its linger time is over, or when the session is flushed or closed.
+ */
+@ThreadSafe
+public class SingleWriterWebSocketSession extends WebSocketSessionDecorator {
+    private final static Logger LOGGER = LoggerFactory.getLogger(SingleWriterWebSocketSession.class);
+
+    private final Batching batching;
+    private final ConcurrentLinkedQueue<WebSocketMessage<?>> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+
+    /**
+     * The number of frames and bytes enqueued and not yet written.
+     */
+    private final AtomicInteger pendingFrames = new AtomicInteger();
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    /**
+     * True if a write of the pending frames is scheduled at the end of their linger time.
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private volatile boolean failed;
+
+    /**
+     * The time of the last reception of a message, heart-beats included, in nanoseconds.
+     */
+    private volatile long lastReadNanos = System.nanoTime();
+
+    public SingleWriterWebSocketSession(WebSocketSession delegate, Batching batching) {
+        super(delegate);
+        this.batching = batching;
+    }
+
+    /**
+     * Enqueues a message, to be written by the current writer of the session.
+     *
+     * @param message the message
+     * @throws IOException if a previous write failed, so that the session is being closed
+     */
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (failed)
+            throw new IOException("The websocket session " + getId() + " failed to write a previous message");
+
+        outbound.add(message);
+        int frames = pendingFrames.incrementAndGet();
+        long bytes = pendingBytes.addAndGet(message.getPayloadLength());
+
+        if (!batching.enabled || batching.lingerMillis == 0 || frames >= batching.maxFrames || bytes >= batching.maxBytes)
+            drain();
+        else if (flushScheduled.compareAndSet(false, true))
+            batching.scheduler.schedule(this::lingerOver, batching.lingerMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Yields the time elapsed since the last reception of a message, heart-beats included.
+     * @return the time in nanoseconds
+     */
+    public long nanosSinceLastRead() {
+        return System.nanoTime() - lastReadNanos;
+    }
+
+    void markRead() {
+        lastReadNanos = System.nanoTime();
+    }
+
+    /**
+     * Writes the pending messages now.
+     */
+    public void flush() {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        // the last frames, such as DISCONNECT, must not be left behind
+        drain();
+        super.close(status);
+    }
+
+    private void lingerOver() {
+        flushScheduled.set(false);
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0)
+            return;
+
+        int missed = 1;
+        do {
+            WebSocketMessage<?> message;
+            while ((message = outbound.poll()) != null) {
+                List<WebSocketMessage<?>> batch = new ArrayList<>();
+                long bytes = message.getPayloadLength();
+                batch.add(message);
+
+                if (batching.enabled) {
+                    WebSocketMessage<?> next;
+                    while (batch.size() < batching.maxFrames
+                            && (next = outbound.peek()) != null
+                            && next.getClass() == message.getClass()
+                            && bytes + next.getPayloadLength() <= batching.maxBytes) {
+                        batch.add(outbound.poll());
+                        bytes += next.getPayloadLength();
+                    }
+                }
+
+                pendingFrames.addAndGet(-batch.size());
+                pendingBytes.addAndGet(-bytes);
+                write(batch, bytes);
+            }
+
+            missed = wip.addAndGet(-missed);
+        }
+        while (missed != 0);
+    }
+
+    private void write(List<WebSocketMessage<?>> batch, long bytes) {
+        if (failed)
+            return;
+
+        try {
+            getDelegate().sendMessage(batch.size() == 1 ? batch.get(0) : coalesce(batch, bytes));
+            batching.record(batch.size(), bytes);
+        }
+        catch (IOException | RuntimeException e) {
+            // the producer of the message is gone: closing the session reports the failure to the STOMP session
+            LOGGER.error("[WsClient] Cannot write to websocket session " + getId(), e);
+            failed = true;
+            outbound.clear();
+            closeQuietly();
+        }
+    }
+
+    private static WebSocketMessage<?> coalesce(List<WebSocketMessage<?>> batch, long bytes) {
+        if (batch.get(0) instanceof TextMessage) {
+            StringBuilder payload = new StringBuilder((int) bytes);
+            for (WebSocketMessage<?> message: batch)
+                payload.append(((TextMessage) message).getPayload());
+
+            return new TextMessage(payload);
+        }
+        else {
+            ByteBuffer payload = ByteBuffer.allocate((int) bytes);
+            for (WebSocketMessage<?> message: batch)
+                payload.put(((BinaryMessage) message).getPayload().duplicate());
+
+            payload.flip();
+            return new BinaryMessage(payload);
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        }
+        catch (IOException | RuntimeException e) {
+            LOGGER.info("[WsClient] Cannot close websocket session " + getId() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A bounded queue of records in a memory-mapped file, used as a ring: each record is its length followed by its bytes,
+ * possibly wrapping around the end of the file. The file is scratch space for the lifetime of the queue,
+ * not a durable store: it is deleted when the queue is closed.
+ */
+@NotThreadSafe
+class SpillFile implements Closeable {
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int head;
+    private int tail;
+    private int used;
+    private int count;
+
+    SpillFile(Path path, int capacity) throws IOException {
+        this.path = path;
+        this.capacity = capacity;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Appends a record, if there is room for it.
+     *
+     * @param record the record
+     * @return true if appended, false if the file is full
+     */
+    boolean offer(byte[] record) {
+        if (Integer.BYTES + record.length > capacity - used)
+            return false;
+
+        byte[] length = { (byte) (record.length >>> 24), (byte) (record.length >>> 16), (byte) (record.length >>> 8), (byte) record.length };
+        tail = write(tail, length);
+        tail = write(tail, record);
+        used += Integer.BYTES + record.length;
+        count++;
+        return true;
+    }
+
+    /**
+     * Yields the first record, without removing it.
+     * @return the record, or {@code null} if the file is empty
+     */
+    byte[] peek() {
+        if (count == 0)
+            return null;
+
+        byte[] length = new byte[Integer.BYTES];
+        int position = read(head, length);
+        byte[] record = new byte[((length[0] & 0xff) << 24) | ((length[1] & 0xff) << 16) | ((length[2] & 0xff) << 8) | (length[3] & 0xff)];
+        read(position, record);
+        return record;
+    }
+
+    /**
+     * Removes the first record.
+     * @return the record, or {@code null} if the file is empty
+     */
+    byte[] poll() {
+        byte[] record = peek();
+        if (record != null) {
+            head = (head + Integer.BYTES + record.length) % capacity;
+            used -= Integer.BYTES + record.length;
+            count--;
+        }
+
+        return record;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    int size() {
+        return count;
+    }
+
+    int usedBytes() {
+        return used;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    private int write(int position, byte[] bytes) {
+        int first = Math.min(bytes.length, capacity - position);
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.put(bytes, 0, first);
+        view.position(0);
+        view.put(bytes, first, bytes.length - first);
+
+        return (position + bytes.length) % capacity;
+    }
+
+    private int read(int position, byte[] bytes) {
+        int first = Math.min(bytes.length, capacity - position);
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes, 0, first);
+        view.position(0);
+        view.get(bytes, first, bytes.length - first);
+
+        return (position + bytes.length) % capacity;
+    }
+}
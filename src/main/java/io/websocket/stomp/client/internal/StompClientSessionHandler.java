@@ -8,34 +8,45 @@ import org.springframework.messaging.simp.stomp.StompSession;
 import org.springframework.messaging.simp.stomp.StompSessionHandler;
 
 import java.lang.reflect.Type;
-import java.util.function.Consumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
  * Class to handle the lifecycle of a STOMP session.
  */
 public class StompClientSessionHandler implements StompSessionHandler {
     private final static Logger LOGGER = LoggerFactory.getLogger(StompClientSessionHandler.class);
-    private final Consumer<Throwable> errorHandler;
+    private final BiConsumer<StompSession, Throwable> errorHandler;
+    private final CompletableFuture<StompHeaders> connectedHeaders = new CompletableFuture<>();
 
-    public StompClientSessionHandler(Consumer<Throwable> errorHandler) {
+    public StompClientSessionHandler(BiConsumer<StompSession, Throwable> errorHandler) {
         this.errorHandler = errorHandler;
     }
 
     @Override
     public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
         LOGGER.info("[WsClient] New session established: " + session.getSessionId());
+        this.connectedHeaders.complete(connectedHeaders);
+    }
+
+    /**
+     * Yields the headers of the CONNECTED frame of the server, such as the negotiated heart-beats.
+     * @return the headers, completed when the session is established
+     */
+    public CompletableFuture<StompHeaders> connectedHeaders() {
+        return connectedHeaders;
     }
 
     @Override
     public void handleException(StompSession session, StompCommand command, StompHeaders headers, byte[] payload, Throwable exception) {
         LOGGER.error("[WsClient] STOMP session " + session.getSessionId()+ " exception", exception);
-        errorHandler.accept(exception);
+        errorHandler.accept(session, exception);
     }
 
     @Override
     public void handleTransportError(StompSession session, Throwable exception) {
         LOGGER.error("[WsClient] STOMP session " + session.getSessionId() + " transport error", exception);
-        errorHandler.accept(exception);
+        errorHandler.accept(session, exception);
     }
 
     @Override
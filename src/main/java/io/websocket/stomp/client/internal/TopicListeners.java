@@ -0,0 +1,107 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The frame handler of a subscription to a topic shared by many local handlers. The frames are decoded once,
+ * with the result type of the topic, and their payload is handed to all handlers in the same dispatched task.
+ * The handlers are added and removed without renewing the subscription; a frame is handed to the handlers
+ * present when its task runs. A handler that fails is logged, without depriving the other handlers of the payload.
+ */
+@ThreadSafe
+public class TopicListeners implements StompFrameHandler {
+    private final static Logger LOGGER = LoggerFactory.getLogger(TopicListeners.class);
+
+    public final String topic;
+    public final Class<?> resultType;
+
+    /**
+     * The function yielding the key of the last values cached, or {@code null} if only the last value is cached.
+     */
+    public final Function<?, String> keyExtractor;
+    private final Dispatcher dispatcher;
+    private final Consumer<Object> listener;
+
+    /**
+     * The handlers, read far more often than they change.
+     */
+    private final CopyOnWriteArrayList<Handler> handlers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Builds the handler of a topic.
+     *
+     * @param topic the topic, the key of its frames for the dispatcher
+     * @param resultType the type of the payloads of the topic
+     * @param keyExtractor the function yielding the key of the last values cached, or {@code null}
+     * @param dispatcher the dispatcher of the frames to the handlers
+     * @param listener the listener of the payloads received, called before their dispatch
+     */
+    public TopicListeners(String topic, Class<?> resultType, Function<?, String> keyExtractor, Dispatcher dispatcher, Consumer<Object> listener) {
+        this.topic = topic;
+        this.resultType = resultType;
+        this.keyExtractor = keyExtractor;
+        this.dispatcher = dispatcher;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a handler.
+     *
+     * @param key the key that identifies the handler on removal
+     * @param handler the handler of the payloads, possibly {@code null} if the frame has no body
+     */
+    public void add(Object key, Consumer<Object> handler) {
+        handlers.add(new Handler(key, handler));
+    }
+
+    /**
+     * Removes the handlers added with a key.
+     *
+     * @param key the key given when adding the handlers
+     * @return true if a handler was removed
+     */
+    public boolean remove(Object key) {
+        return handlers.removeIf(handler -> handler.key == key);
+    }
+
+    @Override
+    public Type getPayloadType(StompHeaders headers) {
+        return resultType;
+    }
+
+    @Override
+    public void handleFrame(StompHeaders headers, Object payload) {
+        listener.accept(payload);
+        dispatcher.dispatch(topic, () -> {
+            for (Handler handler : handlers) {
+                try {
+                    handler.consumer.accept(payload);
+                }
+                catch (RuntimeException e) {
+                    LOGGER.error("[WsClient] Handler of topic " + topic + " failed", e);
+                }
+            }
+        });
+    }
+
+    @Immutable
+    private static class Handler {
+        private final Object key;
+        private final Consumer<Object> consumer;
+
+        private Handler(Object key, Consumer<Object> consumer) {
+            this.key = key;
+            this.consumer = consumer;
+        }
+    }
+}
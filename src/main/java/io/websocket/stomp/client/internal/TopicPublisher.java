@@ -0,0 +1,281 @@
+package io.websocket.stomp.client.internal;
+
+import io.websocket.stomp.client.OverflowStrategy;
+import io.websocket.stomp.client.exceptions.InternalFailureException;
+import io.websocket.stomp.client.models.ErrorModel;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hot publisher of the messages of a websocket topic. Each subscriber gets the messages received
+ * after its subscription, through a bounded buffer drained as the subscriber requests more messages.
+ * When the buffer is full, the overflow strategy decides what happens to the new messages.
+ * A message that cannot be handed, such as an error or a message of another type, is logged and dropped:
+ * the streams end only when the messages of the topic stop for good.
+ *
+ * @param <T> the type of the messages
+ */
+@ThreadSafe
+public class TopicPublisher<T> implements Publisher<T>, StompFrameHandler {
+    private final static Logger LOGGER = LoggerFactory.getLogger(TopicPublisher.class);
+    private final String topic;
+    private final Class<T> resultTypeClass;
+    private final int bufferSize;
+    private final OverflowStrategy overflowStrategy;
+    private final CopyOnWriteArrayList<BufferedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean completed;
+    private volatile Throwable failure;
+
+    public TopicPublisher(String topic, Class<T> resultTypeClass, int bufferSize, OverflowStrategy overflowStrategy) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be at least 1");
+
+        this.topic = topic;
+        this.resultTypeClass = resultTypeClass;
+        this.bufferSize = bufferSize;
+        this.overflowStrategy = overflowStrategy;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+
+        BufferedSubscription subscription = new BufferedSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscriptions.add(subscription);
+
+        if (completed)
+            terminate(subscription);
+    }
+
+    @Override
+    public Type getPayloadType(StompHeaders headers) {
+        return resultTypeClass;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void handleFrame(StompHeaders headers, Object payload) {
+        Object result = FrameHandler.toResult(payload, resultTypeClass);
+
+        if (result instanceof ErrorModel)
+            LOGGER.error("[WsClient] Dropped message from topic {}: {}", topic, ((ErrorModel) result).message);
+        else if (result instanceof CodecMessageConverter.NullObject)
+            LOGGER.info("[WsClient] Dropped null message from topic {}", topic);
+        else
+            subscriptions.forEach(subscription -> subscription.offer((T) result));
+    }
+
+    /**
+     * Signals the completion of the stream to all subscribers, once they have consumed their buffered messages.
+     */
+    public void complete() {
+        completed = true;
+        subscriptions.forEach(BufferedSubscription::complete);
+    }
+
+    /**
+     * Signals an error to all subscribers, since the messages of the topic stop for good, such as when the client
+     * gives up reconnecting.
+     * @param cause the cause of the failure
+     */
+    public void fail(Throwable cause) {
+        failure = cause;
+        completed = true;
+        subscriptions.forEach(subscription -> subscription.fail(cause));
+    }
+
+    private void terminate(BufferedSubscription subscription) {
+        Throwable failure = this.failure;
+        if (failure != null)
+            subscription.fail(failure);
+        else
+            subscription.complete();
+    }
+
+    /**
+     * The subscription of a subscriber, with its buffer of messages not yet requested.
+     * The messages are emitted by whichever thread finds demand and buffered messages:
+     * the transport thread on reception, or the subscriber thread on request.
+     */
+    private class BufferedSubscription implements Subscription {
+        private final Subscriber<? super T> subscriber;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+
+        @GuardedBy("lock")
+        private final ArrayDeque<T> buffer = new ArrayDeque<>();
+
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile Throwable error;
+
+        private BufferedSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Non-positive request " + n));
+                return;
+            }
+
+            requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+
+            lock.lock();
+            try {
+                buffer.clear();
+                notFull.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private void offer(T message) {
+            lock.lock();
+            try {
+                while (!cancelled && !done && buffer.size() >= bufferSize) {
+                    switch (overflowStrategy) {
+                        case DROP_OLDEST:
+                            buffer.poll();
+                            break;
+                        case DROP_LATEST:
+                            return;
+                        case FAIL:
+                            error = new InternalFailureException("Buffer overflow for topic " + topic + ": " + bufferSize + " messages not requested yet");
+                            done = true;
+                            break;
+                        case BLOCK:
+                            try {
+                                notFull.await();
+                            }
+                            catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            }
+                            break;
+                    }
+                }
+
+                if (!cancelled && !done)
+                    buffer.add(message);
+            }
+            finally {
+                lock.unlock();
+            }
+
+            drain();
+        }
+
+        private void fail(Throwable throwable) {
+            error = throwable;
+            complete();
+        }
+
+        private void complete() {
+            done = true;
+
+            // wakes up the transport thread, if blocked on a full buffer
+            lock.lock();
+            try {
+                notFull.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0)
+                return;
+
+            int missed = 1;
+            do {
+                long demand = requested.get();
+                long emitted = 0;
+
+                while (emitted != demand && !cancelled && error == null) {
+                    T message = poll();
+                    if (message == null)
+                        break;
+
+                    subscriber.onNext(message);
+                    emitted++;
+                }
+
+                if (cancelled)
+                    return;
+
+                // an error is signalled immediately, while the completion waits for the buffer to be consumed
+                if (done && (error != null || isEmpty())) {
+                    cancel();
+                    if (error != null)
+                        subscriber.onError(error);
+                    else
+                        subscriber.onComplete();
+
+                    return;
+                }
+
+                if (emitted != 0 && demand != Long.MAX_VALUE)
+                    requested.addAndGet(-emitted);
+
+                missed = wip.addAndGet(-missed);
+            }
+            while (missed != 0);
+        }
+
+        private T poll() {
+            lock.lock();
+            try {
+                T message = buffer.poll();
+                if (message != null)
+                    notFull.signal();
+
+                return message;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isEmpty() {
+            lock.lock();
+            try {
+                return buffer.isEmpty();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.websocket.stomp.client.internal;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompSession.Subscription;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The subscription of a client to a topic. It outlives the sessions of the client: after a reconnection,
+ * it is renewed with the same frame handler in the new session.
+ */
+@ThreadSafe
+public class TopicSubscription {
+    public final String topic;
+    private final Supplier<StompFrameHandler> handlerSupplier;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @GuardedBy("lock")
+    private StompFrameHandler handler;
+
+    /**
+     * The generation of the last session where the subscription was requested, -1 if none.
+     */
+    private final AtomicLong generation = new AtomicLong(-1);
+
+    /**
+     * The subscription in the current session, completed when the server acknowledges it.
+     */
+    private volatile CompletableFuture<Subscription> receipt = new CompletableFuture<>();
+
+    /**
+     * Builds the subscription of a topic.
+     *
+     * @param topic the topic
+     * @param handlerSupplier the supplier of the frame handler of the topic, called at most once
+     */
+    public TopicSubscription(String topic, Supplier<StompFrameHandler> handlerSupplier) {
+        this.topic = topic;
+        this.handlerSupplier = handlerSupplier;
+    }
+
+    /**
+     * Yields the frame handler of the topic, the same in all sessions.
+     * @return the frame handler
+     */
+    public StompFrameHandler handler() {
+        lock.lock();
+        try {
+            if (handler == null)
+                handler = handlerSupplier.get();
+
+            return handler;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Yields the subscription in the current session.
+     * @return the subscription, completed when the server acknowledges it
+     */
+    public CompletableFuture<Subscription> receipt() {
+        return receipt;
+    }
+
+    /**
+     * Claims the right to request this subscription in the session of the given generation.
+     *
+     * @param sessionGeneration the generation of the session
+     * @return true if the subscription was not requested yet in that session, nor in a later one
+     */
+    public boolean claim(long sessionGeneration) {
+        long current;
+        do {
+            current = generation.get();
+            if (current >= sessionGeneration)
+                return false;
+        }
+        while (!generation.compareAndSet(current, sessionGeneration));
+
+        return true;
+    }
+
+    /**
+     * Prepares this subscription to be renewed in a new session, after the loss of the current one.
+     * A subscription still waiting for its acknowledgement keeps waiting, until the renewal.
+     */
+    public void reset() {
+        if (receipt.isDone())
+            receipt = new CompletableFuture<>();
+    }
+}
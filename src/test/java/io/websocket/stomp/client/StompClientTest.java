@@ -1,9 +1,54 @@
 package io.websocket.stomp.client;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.google.gson.JsonIOException;
+import com.google.gson.reflect.TypeToken;
+import io.websocket.stomp.client.codec.CborCodec;
+import io.websocket.stomp.client.codec.GsonCodec;
+import io.websocket.stomp.client.exceptions.ConnectionLostException;
+import io.websocket.stomp.client.internal.Batching;
+import io.websocket.stomp.client.internal.ChunkedFrameHandler;
+import io.websocket.stomp.client.internal.CodecMessageConverter;
+import io.websocket.stomp.client.internal.Compression;
+import io.websocket.stomp.client.internal.DestinationRouter;
+import io.websocket.stomp.client.internal.Dispatcher;
+import io.websocket.stomp.client.internal.EncodedPayload;
+import io.websocket.stomp.client.internal.MessageTracer;
+import io.websocket.stomp.client.internal.OfflineBuffer;
+import io.websocket.stomp.client.internal.ReplyFuture;
+import io.websocket.stomp.client.internal.SerialRequests;
+import io.websocket.stomp.client.internal.SingleWriterWebSocketSession;
+import io.websocket.stomp.client.internal.TopicPublisher;
+import io.websocket.stomp.client.models.ErrorModel;
 import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+import java.util.zip.DataFormatException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -24,6 +69,218 @@ class StompClientTest {
         }
     }
 
+    @Test
+    void stompClientPipelinedEchoMessagesTest() {
+        int numOfRequests = 32;
+        ExecutorService pool = Executors.newFixedThreadPool(numOfRequests);
+        StompClientConfig config = StompClientConfig.builder().pipelining(true).maxInFlightPerTopic(8).build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < numOfRequests; i++) {
+                String message = "hello world " + i;
+                results.add(pool.submit(() -> message.equals(stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel(message))).message)));
+            }
+
+            for (Future<Boolean> result : results)
+                assertTrue(result.get(4, TimeUnit.SECONDS));
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void stompClientJsonDecodeTest() {
+        GsonCodec codec = new GsonCodec();
+        String name = "h\u00e9llo w\u00f6rld \u2713 \uD83D\uDE00";
+        byte[] json = ("{\"name\":\"" + name + "\"}").getBytes(StandardCharsets.UTF_8);
+
+        try {
+            // the bytes are decoded as UTF-8, from an array or a stream
+            assertEquals(name, ((Event) codec.decode(json, Event.class)).name);
+            assertEquals(name, ((Event) codec.decode(new ByteArrayInputStream(json), Event.class)).name);
+
+            assertNull(codec.decode(" null\n".getBytes(StandardCharsets.UTF_8), Event.class));
+            assertNull(codec.decode(new ByteArrayInputStream("null".getBytes(StandardCharsets.UTF_8)), Event.class));
+            assertNull(codec.decode(new byte[0], Event.class));
+
+            // a document followed by anything but whitespace is rejected
+            assertThrows(JsonIOException.class, () -> codec.decode("{\"name\":\"a\"} {}".getBytes(StandardCharsets.UTF_8), Event.class));
+            assertThrows(JsonIOException.class, () -> codec.decode(new ByteArrayInputStream("{\"name\":\"a\"} x".getBytes(StandardCharsets.UTF_8)), Event.class));
+
+        } catch (IOException e) {
+            fail("Decoding failed");
+        }
+
+        try(StompClient stompClient = new StompClient(endpoint)) {
+            assertEquals(name, stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel(name))).message);
+
+        } catch (InterruptedException | ExecutionException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientBinaryCodecTest() {
+        StompClientConfig config = StompClientConfig.builder().contentType("/echo", CborCodec.CONTENT_TYPE).build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+
+            Quote quote = new Quote("ACME", 12.75, -3_000_000_000L, Arrays.asList(1, 24, 300, 70000), null);
+            Quote echo = stompClient.subscribeAndSend("/echo/message", Quote.class, Optional.of(quote));
+            assertEquals(quote.symbol, echo.symbol);
+            assertEquals(quote.price, echo.price);
+            assertEquals(quote.volume, echo.volume);
+            assertEquals(quote.sizes, echo.sizes);
+            assertNull(echo.venue);
+
+            // the maps are read through a tree
+            CborCodec codec = new CborCodec();
+            Map<String, String> venues = new LinkedHashMap<>();
+            venues.put("ACME", "XNYS");
+            venues.put("INIT", "XPAR");
+            assertEquals(venues, codec.decode(codec.encode(venues), new TypeToken<Map<String, String>>() {}.getType()));
+
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientAsyncRequestTest() {
+
+        try(StompClient stompClient = new StompClient(endpoint)) {
+
+            CompletableFuture<EchoModel> echo = stompClient.subscribeAndSendAsync("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello world")), 4, TimeUnit.SECONDS);
+            assertEquals("hello world", echo.get().message);
+
+            // nobody replies to this topic
+            CompletableFuture<EchoModel> unanswered = stompClient.subscribeAndSendAsync("/echo/nobody", EchoModel.class, Optional.of(new EchoModel("hello world")), 1, TimeUnit.SECONDS);
+            ExecutionException e = assertThrows(ExecutionException.class, unanswered::get);
+            assertTrue(e.getCause() instanceof TimeoutException);
+
+        } catch (InterruptedException | ExecutionException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientAbandonedRequestTest() {
+        AtomicInteger unansweredSent = new AtomicInteger();
+        CompletableFuture<Void> firstSent = new CompletableFuture<>();
+        MetricsRegistry metrics = new MetricsRegistry() {
+
+            @Override
+            public void messageSent(String destination, int bytes, long encodeNanos) {
+                if ("/echo/nobody".equals(destination) && unansweredSent.incrementAndGet() == 1)
+                    firstSent.complete(null);
+            }
+        };
+        StompClientConfig config = StompClientConfig.builder().serialReplyTimeoutMillis(300).metrics(metrics).build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+
+            // a request whose reply never comes holds the next one of its topic for the reply timeout only
+            CompletableFuture<EchoModel> first = stompClient.subscribeAndSendAsync("/echo/nobody", EchoModel.class, Optional.of(new EchoModel("first")));
+            firstSent.get(2, TimeUnit.SECONDS);
+            first.completeExceptionally(new TimeoutException());
+            CompletableFuture<EchoModel> second = stompClient.subscribeAndSendAsync("/echo/nobody", EchoModel.class, Optional.of(new EchoModel("second")), 2, TimeUnit.SECONDS);
+            assertTrue(assertThrows(ExecutionException.class, () -> second.get(4, TimeUnit.SECONDS)).getCause() instanceof TimeoutException);
+            assertEquals(2, unansweredSent.get());
+
+            // the late reply of a cancelled request is not taken for the reply of the next one
+            assertEquals("warm up", stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("warm up"))).message);
+            stompClient.subscribeAndSendAsync("/echo/message", EchoModel.class, Optional.of(new EchoModel("cancelled"))).cancel(false);
+            assertEquals("next", stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("next"))).message);
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientSerialRequestsTest() throws InterruptedException, ExecutionException, TimeoutException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        SerialRequests requests = new SerialRequests(scheduler, 300);
+
+        try {
+            // the caller of the first request stops waiting, and its reply is late
+            ReplyFuture abandoned = new ReplyFuture();
+            ReplyFuture next = new ReplyFuture();
+            requests.submit(abandoned, () -> {});
+            abandoned.completeExceptionally(new TimeoutException());
+            requests.submit(next, () -> {});
+            requests.complete("late", -1);
+            requests.complete("next", -1);
+            assertEquals("next", next.get(2, TimeUnit.SECONDS));
+
+            // the reply of the first request never comes: the next one still gets its own reply
+            ReplyFuture unanswered = new ReplyFuture();
+            ReplyFuture answered = new ReplyFuture();
+            requests.submit(unanswered, () -> {});
+            unanswered.cancel(false);
+            requests.submit(answered, () -> scheduler.execute(() -> requests.complete("answered", -1)));
+            assertEquals("answered", answered.get(2, TimeUnit.SECONDS));
+        }
+        finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void stompClientPoolEchoMessagesTest() {
+        int numOfRequests = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(numOfRequests);
+
+        try(StompClientPool stompClientPool = new StompClientPool(endpoint, 4, ShardingStrategy.ROUND_ROBIN)) {
+
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < numOfRequests; i++) {
+                String message = "hello world " + i;
+                results.add(pool.submit(() -> message.equals(stompClientPool.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel(message))).message)));
+            }
+
+            for (Future<Boolean> result : results)
+                assertTrue(result.get(4, TimeUnit.SECONDS));
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void stompClientSharedRuntimeTest() {
+
+        try(StompClientRuntime runtime = new StompClientRuntime(2, 2)) {
+            StompClient first = runtime.newClient(endpoint);
+            StompClient second = runtime.newClient(endpoint);
+            assertEquals(2, runtime.getClientCount());
+
+            assertEquals("hello first", first.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello first"))).message);
+            assertEquals("hello second", second.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello second"))).message);
+
+            // a client closed alone leaves the runtime to the others
+            first.close();
+            assertEquals(1, runtime.getClientCount());
+            assertEquals("hello again", second.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello again"))).message);
+
+            runtime.close();
+            assertEquals(ConnectionState.CLOSED, second.getConnectionState());
+            assertThrows(IllegalStateException.class, () -> runtime.newClient(endpoint));
+
+        } catch (InterruptedException | ExecutionException e) {
+            fail("Connection failed");
+        }
+    }
+
     @Test
     void stompClientAsynchronousEchoMessageTest() {
         CompletableFuture<Boolean> future = new CompletableFuture<>();
@@ -82,6 +339,1013 @@ class StompClientTest {
     }
 
 
+    @Test
+    void stompClientBatchingTest() {
+        int numOfEvents = 100;
+        CountDownLatch received = new CountDownLatch(numOfEvents);
+        StompClientConfig config = StompClientConfig.builder().batching(true).batchLingerMillis(50).batchMaxFrames(20).build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+
+            stompClient.subscribeToTopic("/topic/events", Event.class, (result, error) -> received.countDown());
+
+            for (int i = 0; i < numOfEvents; i++)
+                stompClient.send("/events/add", Optional.of(new Event("event " + i)));
+
+            stompClient.flush();
+            assertTrue(received.await(4, TimeUnit.SECONDS));
+
+            BatchMetrics metrics = stompClient.getBatchMetrics();
+            assertTrue(metrics.frames >= numOfEvents);
+            assertTrue(metrics.batches < metrics.frames);
+            assertTrue(metrics.maxFramesPerBatch <= 20);
+
+        } catch (InterruptedException | ExecutionException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientBulkSubscribeTest() {
+        List<String> topics = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+            topics.add("/topic/bulk/" + i);
+
+        try(StompClient stompClient = new StompClient(endpoint)) {
+
+            stompClient.subscribeToTopicsAsync(topics, Event.class, (result, error) -> {}).get(4, TimeUnit.SECONDS);
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Subscription failed");
+        }
+    }
+
+    @Test
+    void stompClientReconnectionTest() {
+        CompletableFuture<ConnectionEvent> reconnected = new CompletableFuture<>();
+        CountDownLatch received = new CountDownLatch(1);
+        StompClientConfig config = StompClientConfig.builder().reconnectDelays(10, 1000).build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+
+            stompClient.addConnectionListener(event -> {
+                if (event.state == ConnectionState.CONNECTED)
+                    reconnected.complete(event);
+            });
+            stompClient.subscribeToTopic("/topic/events", Event.class, (result, error) -> received.countDown());
+
+            // the server drops the connection of a client that sends a message beyond its size limit
+            char[] huge = new char[256 * 1024];
+            Arrays.fill(huge, 'x');
+            stompClient.send("/events/add", Optional.of(new Event(new String(huge))));
+
+            ConnectionEvent event = reconnected.get(4, TimeUnit.SECONDS);
+            assertTrue(event.attempt >= 1);
+            assertEquals(ConnectionState.CONNECTED, stompClient.getConnectionState());
+
+            // the subscription is renewed with its handler
+            stompClient.subscribeToTopicAsync("/topic/events", Event.class, (result, error) -> {}).get(4, TimeUnit.SECONDS);
+            stompClient.send("/events/add", Optional.of(new Event("event")));
+            assertTrue(received.await(4, TimeUnit.SECONDS));
+
+            EchoModel echoModel = stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello world")));
+            assertEquals("hello world", echoModel.message);
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Reconnection failed");
+        }
+    }
+
+    @Test
+    void stompClientOfflineBufferTest() throws IOException {
+        int numOfEvents = 20;
+        CompletableFuture<Boolean> disconnected = new CompletableFuture<>();
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        CountDownLatch allReceived = new CountDownLatch(numOfEvents);
+        Path spillFile = Files.createTempFile("offline", ".spill");
+        StompClientConfig config = StompClientConfig.builder()
+                .reconnectDelays(500, 1000)
+                .reconnectJitter(0)
+                .offlineBuffer(256, OfflineOverflowPolicy.FAIL)
+                .offlineSpill(spillFile, 64 * 1024)
+                .build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+
+            stompClient.addConnectionListener(event -> {
+                if (event.state == ConnectionState.RECONNECTING)
+                    disconnected.complete(true);
+            });
+            stompClient.subscribeToTopic("/topic/events", Event.class, (result, error) -> {
+                if (result != null && received.add(result.name))
+                    allReceived.countDown();
+            });
+
+            // the server drops the connection of a client that sends a message beyond its size limit
+            char[] huge = new char[256 * 1024];
+            Arrays.fill(huge, 'x');
+            stompClient.send("/events/add", Optional.of(new Event(new String(huge))));
+            assertTrue(disconnected.get(4, TimeUnit.SECONDS));
+
+            Set<String> sent = new HashSet<>();
+            for (int i = 0; i < numOfEvents; i++) {
+                sent.add("event " + i);
+                stompClient.send("/events/add", Optional.of(new Event("event " + i)));
+            }
+
+            OfflineBufferMetrics buffered = stompClient.getOfflineBufferMetrics();
+            assertEquals(numOfEvents, buffered.bufferedMessages);
+            assertTrue(buffered.spilledBytes > 0);
+
+            assertTrue(allReceived.await(4, TimeUnit.SECONDS));
+            assertEquals(sent, received);
+            assertEquals(numOfEvents, stompClient.getOfflineBufferMetrics().replayedMessages);
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Reconnection failed");
+        }
+    }
+
+    @Test
+    void stompClientOfflineDropOldestTest() throws IOException {
+        int numOfMessages = 10;
+        Path spillFile = Files.createTempFile("offline", ".spill");
+        List<String> sent = new ArrayList<>();
+        List<String> replayed = new ArrayList<>();
+
+        // room for a couple of messages in memory, and a couple more in the spill file
+        try(OfflineBuffer buffer = new OfflineBuffer(200, OfflineOverflowPolicy.DROP_OLDEST, spillFile, 100)) {
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination("/d");
+
+            for (int i = 0; i < numOfMessages; i++) {
+                sent.add("message " + i);
+                buffer.offer(headers, ("message " + i).getBytes(StandardCharsets.UTF_8));
+            }
+
+            OfflineBufferMetrics metrics = buffer.metrics();
+            assertTrue(metrics.spilledBytes > 0);
+            buffer.drain(entry -> replayed.add(new String(entry.payload, StandardCharsets.UTF_8)));
+
+            // the oldest messages overall are dropped, so that the newest ones are replayed in order
+            assertEquals(sent.subList(numOfMessages - replayed.size(), numOfMessages), replayed);
+            assertEquals(numOfMessages - replayed.size(), metrics.droppedMessages);
+            assertTrue(replayed.size() > 2);
+        }
+    }
+
+    @Test
+    void stompClientMissedHeartbeatTest() throws IOException {
+        CompletableFuture<ConnectionEvent> reconnected = new CompletableFuture<>();
+        // the server sends a heart-beat every 5 s, one missed is enough
+        StompClientConfig config = StompClientConfig.builder()
+                .heartbeat(1000, 1000)
+                .heartbeatMissedLimit(1)
+                .reconnectDelays(10, 1000)
+                .build();
+
+        try(Relay relay = new Relay(8080); StompClient stompClient = new StompClient("ws://localhost:" + relay.port() + "/", config)) {
+
+            stompClient.addConnectionListener(event -> {
+                if (event.state == ConnectionState.CONNECTED)
+                    reconnected.complete(event);
+            });
+            assertEquals("hello world", stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello world"))).message);
+
+            // the connection stays open, but nothing reaches the client anymore, the heart-beats included
+            relay.silence();
+
+            ConnectionEvent event = reconnected.get(12, TimeUnit.SECONDS);
+            assertTrue(event.attempt >= 1);
+            assertEquals(ConnectionState.CONNECTED, stompClient.getConnectionState());
+
+            assertEquals("hello again", stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello again"))).message);
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Reconnection failed");
+        }
+    }
+
+    @Test
+    void stompClientCloseFailsWaitingRequestsTest() throws IOException, InterruptedException, ExecutionException {
+        try(Relay relay = new Relay(8080); StompClient stompClient = new StompClient("ws://localhost:" + relay.port() + "/")) {
+            assertEquals("hello world", stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello world"))).message);
+
+            // nothing reaches the client anymore: a request in flight, another one waiting for it, and a subscription
+            relay.silence();
+            CompletableFuture<EchoModel> inFlight = stompClient.subscribeAndSendAsync("/echo/message", EchoModel.class, Optional.of(new EchoModel("in flight")));
+            CompletableFuture<EchoModel> waiting = stompClient.subscribeAndSendAsync("/echo/message", EchoModel.class, Optional.of(new EchoModel("waiting")));
+            CompletableFuture<Void> subscribed = stompClient.subscribeToTopicAsync("/topic/events", Event.class, (result, error) -> {});
+
+            stompClient.close();
+
+            for (CompletableFuture<?> future : Arrays.asList(inFlight, waiting, subscribed)) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof ConnectionLostException);
+            }
+        }
+    }
+
+    @Test
+    void stompClientGiveUpFailsWaitingRequestsTest() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<Void> reconnecting = new CompletableFuture<>();
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        StompClientConfig config = StompClientConfig.builder()
+                .reconnectDelays(500, 1000)
+                .reconnectJitter(0)
+                .reconnectMaxAttempts(1)
+                .offlineBuffer(64 * 1024, OfflineOverflowPolicy.FAIL)
+                .build();
+
+        Relay relay = new Relay(8080);
+        try(StompClient stompClient = new StompClient("ws://localhost:" + relay.port() + "/", config)) {
+
+            stompClient.addConnectionListener(event -> {
+                if (event.state == ConnectionState.RECONNECTING)
+                    reconnecting.complete(null);
+                else if (event.state == ConnectionState.CLOSED)
+                    closed.complete(null);
+            });
+            assertEquals("hello world", stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello world"))).message);
+
+            // the server cannot be reached anymore
+            relay.close();
+            reconnecting.get(4, TimeUnit.SECONDS);
+
+            // buffered while reconnecting, and never replayed
+            CompletableFuture<EchoModel> request = stompClient.subscribeAndSendAsync("/echo/message", EchoModel.class, Optional.of(new EchoModel("buffered")));
+            stompClient.send("/events/add", Optional.of(new Event("buffered")));
+
+            closed.get(4, TimeUnit.SECONDS);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> request.get(2, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof ConnectionLostException);
+            assertEquals(0, stompClient.getOfflineBufferMetrics().bufferedMessages);
+            assertThrows(ConnectionLostException.class, () -> stompClient.send("/events/add", Optional.of(new Event("late"))));
+        }
+    }
+
+    @Test
+    void stompClientLatencyProbeTest() {
+        StompClientConfig config = StompClientConfig.builder().heartbeat(1000, 1000).latencyProbe("/probe", 50).build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+
+            long deadline = System.currentTimeMillis() + 4000;
+            while (stompClient.getLatencyMillis() < 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            assertTrue(stompClient.getLatencyMillis() >= 0);
+            assertEquals(ConnectionState.CONNECTED, stompClient.getConnectionState());
+
+        } catch (InterruptedException | ExecutionException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientTraceSamplingTest() {
+        int numOfMessages = 4000;
+        ListAppender<ILoggingEvent> traces = new ListAppender<>();
+        ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("io.websocket.stomp.client.trace");
+        Level level = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        logger.addAppender(traces);
+        traces.start();
+
+        try {
+            // tracing disabled: no trace at all
+            for (int i = 0; i < numOfMessages; i++)
+                MessageTracer.DISABLED.sent("/d", "s", 10, 1000);
+            assertTrue(traces.list.isEmpty());
+
+            // one message in 10 on average, far from none and from all
+            MessageTracer sampling = new MessageTracer(10);
+            for (int i = 0; i < numOfMessages; i++)
+                sampling.sent("/d", "s", 10, 1000);
+            int sampled = traces.list.size();
+            assertTrue(sampled > numOfMessages / 20 && sampled < numOfMessages / 5, "sampled " + sampled);
+            assertEquals("[WsClient] event=send destination=/d session=s bytes=10 encodeMicros=1", traces.list.get(0).getFormattedMessage());
+            traces.list.clear();
+
+            // every message of a request traced, with its structured fields
+            StompClientConfig config = StompClientConfig.builder().traceSampleRate(1).build();
+            try(StompClient stompClient = new StompClient(endpoint, config)) {
+                assertEquals("hello world", stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello world"))).message);
+            }
+
+            List<String> events = new ArrayList<>();
+            for (ILoggingEvent trace : new ArrayList<>(traces.list))
+                events.add(trace.getFormattedMessage());
+            assertTrue(events.stream().anyMatch(event -> event.startsWith("[WsClient] event=send destination=/echo/message ")), events.toString());
+            assertTrue(events.stream().anyMatch(event -> event.startsWith("[WsClient] event=receive destination=/user/")), events.toString());
+            assertTrue(events.stream().anyMatch(event -> event.startsWith("[WsClient] event=request destination=/echo/message ") && event.endsWith("success=true")), events.toString());
+
+        } catch (InterruptedException | ExecutionException e) {
+            fail("Connection failed");
+        }
+        finally {
+            logger.detachAppender(traces);
+            logger.setLevel(level);
+        }
+    }
+
+    @Test
+    void stompClientMetricsTest() {
+        Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+        Set<String> gauges = ConcurrentHashMap.newKeySet();
+        MetricsRegistry metrics = new MetricsRegistry() {
+
+            @Override
+            public void gauge(String name, LongSupplier value) {
+                gauges.add(name);
+            }
+
+            @Override
+            public void messageSent(String destination, int bytes, long encodeNanos) {
+                counters.computeIfAbsent("sent " + destination, _key -> new AtomicInteger()).incrementAndGet();
+            }
+
+            @Override
+            public void messageReceived(String destination, int bytes, long decodeNanos) {
+                counters.computeIfAbsent("received " + destination, _key -> new AtomicInteger()).incrementAndGet();
+            }
+
+            @Override
+            public void requestCompleted(String topic, long nanos, boolean success) {
+                counters.computeIfAbsent("request " + topic + " " + success, _key -> new AtomicInteger()).incrementAndGet();
+            }
+
+            @Override
+            public void subscribed(String topic, long nanos) {
+                counters.computeIfAbsent("subscribed", _key -> new AtomicInteger()).incrementAndGet();
+            }
+        };
+
+        try(StompClient stompClient = new StompClient(endpoint, StompClientConfig.builder().metrics(metrics).build())) {
+
+            for (int i = 0; i < 3; i++)
+                stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello world")));
+
+            assertEquals(3, counters.get("sent /echo/message").get());
+            assertEquals(3, counters.get("received /user/" + stompClient.getClientKey() + "/echo/message").get());
+
+            // the latency of a request is recorded when its future completes, possibly after the caller wakes up
+            long deadline = System.currentTimeMillis() + 1000;
+            while (counters.getOrDefault("request /echo/message true", new AtomicInteger()).get() < 3 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            assertEquals(3, counters.get("request /echo/message true").get());
+            assertEquals(1, counters.get("subscribed").get());
+            assertTrue(gauges.contains("stomp.dispatch.queue.depth"));
+
+        } catch (InterruptedException | ExecutionException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientOrderedDispatchTest() {
+        assertArrivalOrder(StompClientConfig.builder().dispatchMode(DispatchMode.ORDERED).dispatchLanes(2));
+    }
+
+    @Test
+    void stompClientCallerRunsDispatchTest() {
+        assertArrivalOrder(StompClientConfig.builder().dispatchLanes(1).dispatchQueueCapacity(2).dispatchRejectionPolicy(DispatchRejectionPolicy.CALLER_RUNS));
+    }
+
+    /**
+     * Asserts that the messages of a topic are handled one at a time, in the order they arrive. The test server
+     * may publish them in another order than they are sent, so their arrival order is told by their size.
+     */
+    private void assertArrivalOrder(StompClientConfig.Builder builder) {
+        int numOfEvents = 50;
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger();
+        List<Integer> arrivals = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+
+        MetricsRegistry metrics = new MetricsRegistry() {
+
+            @Override
+            public void messageReceived(String destination, int bytes, long decodeNanos) {
+                if ("/topic/events".equals(destination))
+                    arrivals.add(bytes);
+            }
+        };
+
+        try(StompClient stompClient = new StompClient(endpoint, builder.metrics(metrics).build())) {
+
+            stompClient.subscribeToTopic("/topic/events", Event.class, (result, error) -> {
+                if (running.incrementAndGet() > 1)
+                    future.complete(false);
+
+                LockSupport.parkNanos(20_000);
+                running.decrementAndGet();
+                handled.add(result.name.length());
+                if (handled.size() == numOfEvents)
+                    future.complete(true);
+            });
+
+            for (int i = 1; i <= numOfEvents; i++)
+                stompClient.send("/events/add", Optional.of(new Event(String.join("", Collections.nCopies(i, "e")))));
+
+            assertTrue(future.get(4, TimeUnit.SECONDS));
+
+            // the payloads differ only by the length of their name
+            int base = Collections.min(arrivals) - 1;
+            List<Integer> expected = new ArrayList<>();
+            for (int bytes: arrivals)
+                expected.add(bytes - base);
+            assertEquals(expected, handled);
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientDispatchDeadlockTest() {
+        int numOfEvents = 4;
+        CompletableFuture<String> echo = new CompletableFuture<>();
+        AtomicInteger handled = new AtomicInteger();
+        AtomicInteger discarded = new AtomicInteger();
+
+        MetricsRegistry metrics = new MetricsRegistry() {
+
+            @Override
+            public void messageDiscarded(String topic) {
+                discarded.incrementAndGet();
+            }
+        };
+        StompClientConfig config = StompClientConfig.builder().dispatchLanes(1).dispatchQueueCapacity(1).metrics(metrics).build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+
+            // the first handler waits for a reply while its full queue holds up the transport
+            stompClient.subscribeToTopic("/topic/events", Event.class, (result, error) -> {
+                if (handled.incrementAndGet() == 1) {
+                    try {
+                        echo.complete(stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("hello world"))).message);
+                    }
+                    catch (InterruptedException e) {
+                        echo.completeExceptionally(e);
+                    }
+                }
+            });
+
+            for (int i = 0; i < numOfEvents; i++)
+                stompClient.send("/events/add", Optional.of(new Event("event " + i)));
+
+            assertEquals("hello world", echo.get(6, TimeUnit.SECONDS));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(4);
+            while (handled.get() + discarded.get() < numOfEvents && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertEquals(numOfEvents, handled.get() + discarded.get());
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientVirtualThreadDispatchTest() {
+        int numOfEvents = 50;
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger handled = new AtomicInteger();
+        StompClientConfig config = StompClientConfig.builder().dispatchMode(DispatchMode.VIRTUAL_THREADS).build();
+
+        // on a JVM without virtual threads, the dispatch falls back to the ordered mode
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+
+            // the messages of a topic are handled one at a time, even if their handler blocks
+            stompClient.subscribeToTopic("/topic/events", Event.class, (result, error) -> {
+                if (running.incrementAndGet() > 1)
+                    future.complete(false);
+
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                running.decrementAndGet();
+                if (handled.incrementAndGet() == numOfEvents)
+                    future.complete(true);
+            });
+
+            for (int i = 0; i < numOfEvents; i++)
+                stompClient.send("/events/add", Optional.of(new Event("event " + i)));
+
+            assertTrue(future.get(4, TimeUnit.SECONDS));
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientPatternSubscriptionTest() {
+        CompletableFuture<String> wildcard = new CompletableFuture<>();
+        CompletableFuture<String> tail = new CompletableFuture<>();
+        AtomicInteger unmatched = new AtomicInteger();
+
+        try(StompClient stompClient = new StompClient(endpoint)) {
+
+            // a single subscription on the server, routed to the handlers of the matching patterns
+            stompClient.subscribeToPattern("/topic/events", "/topic/events", Event.class, (result, error) -> {
+                throw new IllegalStateException("failing handler");
+            });
+            stompClient.subscribeToPattern("/topic/events", "/topic/*", Event.class, (result, error) -> wildcard.complete(result.name));
+            stompClient.subscribeToPattern("/topic/events", "/topic/#", Event.class, (result, error) -> tail.complete(result.name));
+            stompClient.subscribeToPattern("/topic/events", "/topic/other", Event.class, (result, error) -> unmatched.incrementAndGet());
+            stompClient.subscribeToPattern("/topic/events", "/topic/events.*", Event.class, (result, error) -> unmatched.incrementAndGet());
+
+            assertThrows(IllegalArgumentException.class, () -> stompClient.subscribeToPattern("/topic/events", "/topic/#/events", Event.class, (result, error) -> {}));
+            assertThrows(IllegalStateException.class, () -> {
+                stompClient.subscribeToTopic("/topic/single", Event.class, (result, error) -> {});
+                stompClient.subscribeToPattern("/topic/single", "/topic/single", Event.class, (result, error) -> {});
+            });
+
+            stompClient.send("/events/add", Optional.of(new Event("routed")));
+
+            // the failing handler does not deprive the other routes of the payload
+            assertEquals("routed", wildcard.get(2, TimeUnit.SECONDS));
+            assertEquals("routed", tail.get(2, TimeUnit.SECONDS));
+            assertEquals(0, unmatched.get());
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientDestinationRouterStaleMatchesTest() {
+        List<String> routedA = new ArrayList<>();
+        List<String> routedB = new ArrayList<>();
+        DestinationRouter routerA = new DestinationRouter("/a", Dispatcher.inline(), (destination, payload) -> {});
+        DestinationRouter routerB = new DestinationRouter("/b", Dispatcher.inline(), (destination, payload) -> {});
+        routerA.addRoute("/a/x", String.class, payload -> routedA.add(String.valueOf(payload)));
+        routerB.addRoute("/b/#", String.class, payload -> routedB.add(String.valueOf(payload)));
+        StompHeaders headersA = new StompHeaders();
+        headersA.setDestination("/a/x");
+        StompHeaders headersB = new StompHeaders();
+        headersB.setDestination("/b/y");
+        StompHeaders unrouted = new StompHeaders();
+        unrouted.setDestination("/a/z");
+
+        // the conversion of a frame of A fails, so that it is never handed: the next frame, for B, is routed by B
+        assertEquals(String.class, routerA.getPayloadType(headersA));
+        routerB.handleFrame(headersB, "b");
+        assertEquals(Collections.emptyList(), routedA);
+        assertEquals(Collections.singletonList("b"), routedB);
+
+        // a frame without body is handed without its payload type being asked, after a frame whose conversion failed
+        assertEquals(String.class, routerA.getPayloadType(headersA));
+        routerA.handleFrame(headersA, "a");
+        routerA.getPayloadType(headersA);
+        routerA.handleFrame(unrouted, null);
+        assertEquals(Collections.singletonList("a"), routedA);
+    }
+
+    @Test
+    void stompClientChunkedTransferTest() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> received = new CompletableFuture<>();
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 50_000; i++)
+            name.append(i % 10);
+
+        // the payload is larger than the buffers of the connection, hence sent in chunks
+        StompClientConfig config = StompClientConfig.builder().messageBufferBytes(16 * 1024).chunkBytes(4 * 1024).build();
+        // a receiver that sends larger chunks still reassembles the smaller ones
+        StompClientConfig receiverConfig = StompClientConfig.builder().chunkBytes(64 * 1024).chunkedMessageMaxBytes(64 * 1024).build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config); StompClient receiver = new StompClient(endpoint, receiverConfig)) {
+            stompClient.subscribeToTopic("/topic/events", Event.class, (result, error) -> future.complete(result != null ? result.name : null));
+            receiver.subscribeToTopic("/topic/events", Event.class, (result, error) -> received.complete(result != null ? result.name : null));
+            stompClient.send("/events/add", Optional.of(new Event(name.toString())));
+
+            assertEquals(name.toString(), future.get(4, TimeUnit.SECONDS));
+            assertEquals(name.toString(), received.get(4, TimeUnit.SECONDS));
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientChunkedTransferLimitsTest() throws InterruptedException {
+        List<String> delivered = new ArrayList<>();
+        StompFrameHandler delegate = new StompFrameHandler() {
+
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return EchoModel.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                delivered.add(((EchoModel) payload).message);
+            }
+        };
+        CodecMessageConverter converter = new CodecMessageConverter(Collections.singletonList(new GsonCodec()), MetricsRegistry.NOOP, MessageTracer.DISABLED, new Compression(-1, 1000, 1000));
+
+        // at most 1000 bytes held per message, each chunk charged 64 bytes more, hence at most 15 chunks;
+        // 2 messages at a time, forgotten after 200 ms without chunks
+        ChunkedFrameHandler handler = new ChunkedFrameHandler(delegate, converter, 1000, 2, 200);
+        byte[] json = "{\"message\":\"chunked, in as many chunks as its sender likes\"}".getBytes(StandardCharsets.UTF_8);
+        BiConsumer<String, int[]> chunk = (id, indexAndCount) -> {
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination("/topic/chunks");
+            headers.set(ChunkedFrameHandler.CHUNK_ID_HEADER, id);
+            headers.set(ChunkedFrameHandler.CHUNK_INDEX_HEADER, Integer.toString(indexAndCount[0]));
+            headers.set(ChunkedFrameHandler.CHUNK_COUNT_HEADER, Integer.toString(indexAndCount[1]));
+            int size = (json.length + indexAndCount[1] - 1) / indexAndCount[1];
+            int start = Math.min(json.length, indexAndCount[0] * size);
+            handler.handleFrame(headers, new EncodedPayload(Arrays.copyOfRange(json, start, Math.min(json.length, start + size))));
+        };
+
+        // a hostile number of chunks is dropped before anything is kept
+        chunk.accept("hostile", new int[] { Integer.MAX_VALUE - 1, Integer.MAX_VALUE });
+        chunk.accept("hostile", new int[] { 10, 16 });
+        assertEquals(0, handler.transfers());
+
+        // tiny chunks are charged their overhead: 15 chunks hold more than the message bytes allow
+        for (int index = 0; index < 15; index++)
+            chunk.accept("tiny", new int[] { index, 15 });
+        assertEquals(Collections.emptyList(), delivered);
+        assertEquals(0, handler.transfers());
+
+        // the chunks are kept as they arrive, in any order
+        chunk.accept("whole", new int[] { 2, 3 });
+        chunk.accept("whole", new int[] { 0, 3 });
+        chunk.accept("whole", new int[] { 1, 3 });
+        assertEquals(Collections.singletonList("chunked, in as many chunks as its sender likes"), delivered);
+        assertEquals(0, handler.transfers());
+
+        // beyond the number of messages at a time, the least recently active one is forgotten: its last chunk completes nothing
+        chunk.accept("first", new int[] { 0, 2 });
+        chunk.accept("second", new int[] { 0, 2 });
+        chunk.accept("third", new int[] { 0, 2 });
+        assertEquals(2, handler.transfers());
+        chunk.accept("first", new int[] { 1, 2 });
+        assertEquals(1, delivered.size());
+        assertEquals(2, handler.transfers());
+
+        // an abandoned message is forgotten once its chunks stopped arriving for long enough
+        Thread.sleep(300);
+        chunk.accept("third", new int[] { 1, 2 });
+        assertEquals(1, delivered.size());
+        assertEquals(1, handler.transfers());
+
+        // the messages in flight are forgotten with their session
+        handler.close();
+        assertEquals(0, handler.transfers());
+        chunk.accept("fourth", new int[] { 0, 1 });
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    void stompClientCompressionTest() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        AtomicInteger receivedBytes = new AtomicInteger();
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 20_000; i++)
+            name.append(i % 10);
+
+        MetricsRegistry metrics = new MetricsRegistry() {
+
+            @Override
+            public void messageReceived(String destination, int bytes, long decodeNanos) {
+                receivedBytes.set(bytes);
+            }
+        };
+        StompClientConfig config = StompClientConfig.builder().compressionThresholdBytes(1024).metrics(metrics).build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+            stompClient.subscribeToTopic("/topic/events", Event.class, (result, error) -> future.complete(result != null ? result.name : null));
+            stompClient.send("/events/add", Optional.of(new Event(name.toString())));
+
+            // the payload travels compressed and is decompressed on receipt
+            assertEquals(name.toString(), future.get(4, TimeUnit.SECONDS));
+            assertTrue(receivedBytes.get() < name.length() / 10);
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientDecompressionLimitTest() throws DataFormatException {
+        Compression compression = new Compression(0, 64 * 1024, 1024 * 1024);
+        byte[] zeros = new byte[1024 * 1024];
+        byte[] bomb = compression.compress(zeros);
+        assertTrue(bomb.length < 8 * 1024);
+
+        // a small compressed payload does not inflate beyond the bound
+        assertThrows(DataFormatException.class, () -> compression.decompress(bomb, compression.maxBytes));
+        assertArrayEquals(zeros, compression.decompress(bomb, compression.chunkMaxBytes));
+        assertThrows(DataFormatException.class, () -> compression.decompress(bomb, zeros.length - 1));
+
+        // the pooled contexts are still sound after a failure
+        byte[] small = "small payload".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(small, compression.decompress(compression.compress(small), small.length));
+    }
+
+    @Test
+    void stompClientTopicFanOutTest() {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        CompletableFuture<String> again = new CompletableFuture<>();
+        AtomicInteger removedCalls = new AtomicInteger();
+
+        try(StompClient stompClient = new StompClient(endpoint)) {
+
+            // the handlers share the subscription of the topic, and a failing one deprives none of the others
+            stompClient.subscribeToTopic("/topic/events", Event.class, (result, error) -> {
+                throw new IllegalStateException("failing handler");
+            });
+            BiConsumer<Event, ErrorModel> removed = (result, error) -> {
+                if (removedCalls.incrementAndGet() == 1)
+                    first.complete(result.name);
+            };
+            stompClient.subscribeToTopic("/topic/events", Event.class, removed);
+            stompClient.subscribeToTopic("/topic/events", Event.class, (result, error) -> {
+                if (!second.complete(result.name))
+                    again.complete(result.name);
+            });
+            assertThrows(IllegalStateException.class, () -> stompClient.subscribeToTopic("/topic/events", EchoModel.class, (result, error) -> {}));
+            assertThrows(IllegalStateException.class, () -> stompClient.subscribeToTopicAsync("/topic/events", Event.class, result -> result.name, (result, error) -> {}));
+
+            // a topic subscribed through a pattern is rejected before it gets handlers of its own
+            stompClient.subscribeToPattern("/topic/routed", "/topic/routed", Event.class, (result, error) -> {});
+            assertThrows(IllegalStateException.class, () -> stompClient.subscribeToTopic("/topic/routed", Event.class, (result, error) -> {}));
+            assertThrows(IllegalStateException.class, () -> stompClient.subscribeToTopic("/topic/routed", EchoModel.class, (result, error) -> {}));
+
+            stompClient.send("/events/add", Optional.of(new Event("shared")));
+            assertEquals("shared", first.get(2, TimeUnit.SECONDS));
+            assertEquals("shared", second.get(2, TimeUnit.SECONDS));
+
+            assertTrue(stompClient.removeTopicHandler("/topic/events", removed));
+            assertFalse(stompClient.removeTopicHandler("/topic/events", removed));
+
+            stompClient.send("/events/add", Optional.of(new Event("again")));
+            assertEquals("again", again.get(2, TimeUnit.SECONDS));
+            assertEquals(1, removedCalls.get());
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientLastValueCacheTest() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> lateJoiner = new CompletableFuture<>();
+        StompClientConfig config = StompClientConfig.builder().lastValueCache(100, 0).build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+            assertFalse(stompClient.getLastValue("/topic/events", Event.class).isPresent());
+
+            stompClient.subscribeToTopicAsync("/topic/events", Event.class, result -> result.name, (result, error) -> future.complete(result.name)).get(2, TimeUnit.SECONDS);
+            stompClient.send("/events/add", Optional.of(new Event("cached")));
+            assertEquals("cached", future.get(2, TimeUnit.SECONDS));
+
+            // the last value is served from memory, to lookups and to the handlers subscribing later
+            assertEquals("cached", stompClient.getLastValue("/topic/events", "cached", Event.class).map(event -> event.name).orElse(null));
+            assertFalse(stompClient.getLastValue("/topic/events", "other", Event.class).isPresent());
+            stompClient.subscribeToTopic("/topic/events", Event.class, (result, error) -> lateJoiner.complete(result.name));
+            assertEquals("cached", lateJoiner.get(2, TimeUnit.SECONDS));
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientResponseCacheTest() {
+        AtomicInteger hits = new AtomicInteger();
+        AtomicInteger misses = new AtomicInteger();
+        AtomicInteger requests = new AtomicInteger();
+        AtomicLong exchangedBytes = new AtomicLong();
+        Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+        MetricsRegistry metrics = new MetricsRegistry() {
+
+            @Override
+            public void gauge(String name, LongSupplier value) {
+                gauges.put(name, value);
+            }
+
+            @Override
+            public void messageSent(String destination, int bytes, long encodeNanos) {
+                exchangedBytes.addAndGet(bytes);
+            }
+
+            @Override
+            public void messageReceived(String destination, int bytes, long decodeNanos) {
+                exchangedBytes.addAndGet(bytes);
+            }
+
+            @Override
+            public void responseCacheLookup(String topic, boolean hit) {
+                (hit ? hits : misses).incrementAndGet();
+            }
+
+            @Override
+            public void requestCompleted(String topic, long nanos, boolean success) {
+                requests.incrementAndGet();
+            }
+        };
+        // kept until evicted, without overflowing the deadline
+        StompClientConfig config = StompClientConfig.builder().cacheResponses("/echo/message", Long.MAX_VALUE).metrics(metrics).build();
+
+        try(StompClient stompClient = new StompClient(endpoint, config)) {
+
+            // the concurrent identical requests share the request in flight
+            List<CompletableFuture<EchoModel>> echoes = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                echoes.add(stompClient.subscribeAndSendAsync("/echo/message", EchoModel.class, Optional.of(new EchoModel("cached"))));
+            for (CompletableFuture<EchoModel> echo: echoes)
+                assertEquals("cached", echo.get(4, TimeUnit.SECONDS).message);
+
+            assertEquals("cached", stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("cached"))).message);
+            assertEquals("other", stompClient.subscribeAndSend("/echo/message", EchoModel.class, Optional.of(new EchoModel("other"))).message);
+
+            // the request is measured once its callers got the response
+            long deadline = System.currentTimeMillis() + 2000;
+            while (requests.get() < 2 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            assertEquals(2, misses.get());
+            assertEquals(8, hits.get());
+            assertEquals(2, requests.get());
+
+            // the responses are sized as received, along with their requests as sent
+            assertEquals(2, gauges.get("stomp.response.cache.size").getAsLong());
+            assertEquals(exchangedBytes.get(), gauges.get("stomp.response.cache.bytes").getAsLong());
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientTopicPublisherTest() {
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+        List<Integer> arrivals = Collections.synchronizedList(new ArrayList<>());
+
+        MetricsRegistry metrics = new MetricsRegistry() {
+
+            @Override
+            public void messageReceived(String destination, int bytes, long decodeNanos) {
+                if ("/topic/events".equals(destination))
+                    arrivals.add(bytes);
+            }
+        };
+
+        try(StompClient stompClient = new StompClient(endpoint, StompClientConfig.builder().metrics(metrics).build())) {
+
+            stompClient.topicPublisher("/topic/events", Event.class, 16, OverflowStrategy.DROP_OLDEST).subscribe(new Subscriber<Event>() {
+                private final List<String> names = new ArrayList<>();
+                private Subscription subscription;
+
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(Event event) {
+                    names.add(event.name);
+                    if (names.size() == 3)
+                        future.complete(names);
+                    else
+                        subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    future.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {}
+            });
+
+            List<String> names = Arrays.asList("event", "event 1", "event 333");
+            for (String name: names)
+                stompClient.send("/events/add", Optional.of(new Event(name)));
+
+            // the messages are published in the order they arrive, told by their size since the test server
+            // may publish them in another order than they are sent
+            List<String> received = future.get(4, TimeUnit.SECONDS);
+            int base = Collections.min(arrivals);
+            List<String> expected = new ArrayList<>();
+            for (int bytes: arrivals)
+                expected.add(names.get((bytes - base) / 2));
+            assertEquals(expected, received);
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            fail("Connection failed");
+        }
+    }
+
+    @Test
+    void stompClientTopicPublisherBadFrameTest() {
+        List<String> names = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        TopicPublisher<Event> publisher = new TopicPublisher<>("/topic/events", Event.class, 16, OverflowStrategy.DROP_OLDEST);
+        publisher.subscribe(new Subscriber<Event>() {
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Event event) {
+                names.add(event.name);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                errors.add(throwable);
+            }
+
+            @Override
+            public void onComplete() {}
+        });
+
+        // an empty body, an error and a payload of another type are dropped, without ending the stream
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination("/topic/events");
+        publisher.handleFrame(headers, null);
+        publisher.handleFrame(headers, new ErrorModel("Error deserializing message", IllegalStateException.class));
+        publisher.handleFrame(headers, new EchoModel("other type"));
+        publisher.handleFrame(headers, new Event("event"));
+        assertEquals(Collections.singletonList("event"), names);
+        assertTrue(errors.isEmpty());
+
+        // the stream ends once the messages of the topic stop for good
+        publisher.fail(new ConnectionLostException("gone"));
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof ConnectionLostException);
+    }
+
+    @Test
+    void stompClientConcurrentSendersTest() throws InterruptedException {
+        int numOfThreads = 8;
+        int numOfMessages = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(numOfThreads);
+        AtomicBoolean writing = new AtomicBoolean();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        Map<String, List<Integer>> written = new ConcurrentHashMap<>();
+
+        // a session that records its writes, and whether two of them ever overlap
+        WebSocketSession delegate = (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { WebSocketSession.class }, (proxy, method, args) -> {
+            if (method.getName().equals("sendMessage")) {
+                if (writing.getAndSet(true))
+                    overlapped.set(true);
+
+                String[] message = ((TextMessage) args[0]).getPayload().split(":");
+                written.computeIfAbsent(message[0], _sender -> Collections.synchronizedList(new ArrayList<>())).add(Integer.parseInt(message[1]));
+                LockSupport.parkNanos(1_000);
+                writing.set(false);
+                return null;
+            }
+
+            return method.getName().equals("getId") ? "test" : null;
+        });
+        SingleWriterWebSocketSession session = new SingleWriterWebSocketSession(delegate, Batching.disabled());
+
+        List<Future<?>> senders = new ArrayList<>();
+        for (int i = 0; i < numOfThreads; i++) {
+            String sender = "sender " + i;
+            senders.add(pool.submit(() -> {
+                for (int j = 0; j < numOfMessages; j++)
+                    session.sendMessage(new TextMessage(sender + ":" + j));
+
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> sender: senders)
+                sender.get(4, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            fail("Sending failed");
+        } finally {
+            pool.shutdown();
+        }
+
+        // each message is written once, one at a time, in the order of its sender
+        assertFalse(overlapped.get());
+        assertEquals(numOfThreads, written.size());
+        List<Integer> expected = new ArrayList<>();
+        for (int j = 0; j < numOfMessages; j++)
+            expected.add(j);
+        for (List<Integer> messages: written.values())
+            assertEquals(expected, messages);
+    }
+
     @Test
     void concurrentlySendEchoMessages() {
         int numOfThreads = 4;
@@ -153,6 +1417,96 @@ class StompClientTest {
         }
     }
 
+    /**
+     * Model class used for tests.
+     */
+    private static class Quote {
+        public final String symbol;
+        public final double price;
+        public final long volume;
+        public final List<Integer> sizes;
+        public final String venue;
+
+        public Quote(String symbol, double price, long volume, List<Integer> sizes, String venue) {
+            this.symbol = symbol;
+            this.price = price;
+            this.volume = volume;
+            this.sizes = sizes;
+            this.venue = venue;
+        }
+    }
+
+    /**
+     * A TCP relay to a local port, whose current connections can stop forwarding what the server sends.
+     */
+    private static class Relay implements AutoCloseable {
+        private final int target;
+        private final ServerSocket server = new ServerSocket(0);
+        private final List<AtomicBoolean> silenced = new CopyOnWriteArrayList<>();
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+        Relay(int target) throws IOException {
+            this.target = target;
+            daemon(this::accept);
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        /**
+         * Drops from now on what the server sends on the connections open so far; the later ones are relayed.
+         */
+        void silence() {
+            silenced.forEach(flag -> flag.set(true));
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    Socket client = server.accept();
+                    Socket upstream = new Socket("localhost", target);
+                    sockets.add(client);
+                    sockets.add(upstream);
+
+                    AtomicBoolean silent = new AtomicBoolean();
+                    silenced.add(silent);
+                    daemon(() -> pump(client, upstream, new AtomicBoolean()));
+                    daemon(() -> pump(upstream, client, silent));
+                }
+            }
+            catch (IOException e) {
+                // closed
+            }
+        }
+
+        private static void pump(Socket from, Socket to, AtomicBoolean silent) {
+            byte[] buffer = new byte[8192];
+            try {
+                for (int read; (read = from.getInputStream().read(buffer)) >= 0; ) {
+                    if (!silent.get())
+                        to.getOutputStream().write(buffer, 0, read);
+                }
+            }
+            catch (IOException e) {
+                // closed
+            }
+        }
+
+        private static void daemon(Runnable task) {
+            Thread thread = new Thread(task, "relay");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            for (Socket socket : sockets)
+                socket.close();
+        }
+    }
+
     private static class StompClientSendWorker {
         private final EchoModel echoModel;
         private final StompClient stompClient;